@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+public class TestForecastAdapter extends AndroidTestCase {
+
+    private static final long DAY = 1419033600000L; // December 20th, 2014
+
+    private ForecastAdapter mAdapter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdapter = new ForecastAdapter(mContext, new ForecastAdapter.OnClickHandler() {
+            @Override
+            public void onClick(long date, int position) {
+            }
+        });
+        // Two-pane mode, where the selection is highlighted.
+        mAdapter.setUseTodayLayout(false);
+    }
+
+    /*
+        A day is selected, then a sync prunes an earlier day.  The diff removes the first row,
+        and the selection has to move up with its day rather than stay at the old position.
+     */
+    public void testSelectionFollowsDayAcrossDiff() {
+        mAdapter.showSnapshot(new ForecastCursor.Row[]{
+                snapshotRow(0), snapshotRow(1), snapshotRow(2)
+        });
+        mAdapter.setSelectedPosition(2);
+        assertEquals(dayAt(2), mAdapter.getSelectedDate());
+
+        // Day 0 is gone; the adapter diffs the snapshot against the cursor itself.
+        mAdapter.swapCursor(forecastCursor(1, 2, 3));
+        assertEquals("Error: Selection didn't follow its day",
+                1, mAdapter.getSelectedPosition());
+        assertEquals(dayAt(2), mAdapter.getSelectedDate());
+
+        // Once the selected day itself is gone, nothing is highlighted.
+        mAdapter.swapCursor(forecastCursor(3, 4));
+        assertEquals(RecyclerView.NO_POSITION, mAdapter.getSelectedPosition());
+        assertEquals(dayAt(2), mAdapter.getSelectedDate());
+    }
+
+    private static long dayAt(int offset) {
+        return DAY + offset * DateUtils.DAY_IN_MILLIS;
+    }
+
+    private static ForecastCursor.Row snapshotRow(int offset) {
+        return new ForecastCursor.Row(dayAt(offset), 800, "Day " + offset, "Clear", "20", "10");
+    }
+
+    private ForecastCursor forecastCursor(int... offsets) {
+        MatrixCursor cursor = new MatrixCursor(ForecastFragment.FORECAST_COLUMNS);
+        for (int offset : offsets) {
+            cursor.addRow(new Object[]{
+                    offset, dayAt(offset), "Clear", 20.0, 10.0, "99705",
+                    800, 64.7488, -147.353, 1.2, 1004.0, 4.0, 180.0
+            });
+        }
+        return new ForecastCursor(mContext, cursor);
+    }
+}
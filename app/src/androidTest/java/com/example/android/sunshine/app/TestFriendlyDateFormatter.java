@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+
+/*
+    Checks FriendlyDateFormatter against the per-call formatting it replaced, and times the two
+    over the same list of days.  Timings are logged rather than asserted, since they depend on
+    the device.
+ */
+public class TestFriendlyDateFormatter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestFriendlyDateFormatter.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int FORECAST_DAYS = 14;
+    private static final int PASSES = 500;
+
+    private FriendlyDateFormatter mFormatter;
+    private long[] mDates;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFormatter = FriendlyDateFormatter.getInstance(mContext);
+        mFormatter.invalidate();
+        // Noon, so no day is anywhere near a midnight or DST boundary.
+        Time time = new Time();
+        time.setToNow();
+        time.set(0, 0, 12, time.monthDay, time.month, time.year);
+        long today = time.toMillis(true);
+        mDates = new long[FORECAST_DAYS];
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            mDates[i] = today + i * DAY_IN_MILLIS;
+        }
+    }
+
+    public void testMatchesPerCallFormatting() {
+        for (long date : mDates) {
+            assertEquals("Friendly day string differs for " + date,
+                    legacyFriendlyDayString(date), mFormatter.getFriendlyDayString(date));
+            assertEquals("Day name differs for " + date,
+                    legacyDayName(date), mFormatter.getDayName(date));
+            assertEquals("Month and day differ for " + date,
+                    legacyMonthDay(date), mFormatter.getFormattedMonthDay(date));
+        }
+        assertEquals(mContext.getString(R.string.today), mFormatter.getDayName(mDates[0]));
+        assertEquals(mContext.getString(R.string.tomorrow), mFormatter.getDayName(mDates[1]));
+    }
+
+    public void testMemoizedAcrossCalls() {
+        String first = mFormatter.getFriendlyDayString(mDates[10]);
+        assertSame("Repeated calls for a day should return the memoized string",
+                first, mFormatter.getFriendlyDayString(mDates[10]));
+
+        mFormatter.invalidate();
+        String rebuilt = mFormatter.getFriendlyDayString(mDates[10]);
+        assertNotSame("invalidate() should drop the memoized strings", first, rebuilt);
+        assertEquals(first, rebuilt);
+    }
+
+    /*
+        Formats the forecast list the way binding it does, once per pass.
+     */
+    public void testFormatterVersusPerCall() {
+        long perCallNanos = 0;
+        for (int pass = 0; pass < PASSES; pass++) {
+            long start = System.nanoTime();
+            for (long date : mDates) {
+                legacyFriendlyDayString(date);
+            }
+            perCallNanos += System.nanoTime() - start;
+        }
+
+        long formatterNanos = 0;
+        for (int pass = 0; pass < PASSES; pass++) {
+            long start = System.nanoTime();
+            for (long date : mDates) {
+                mFormatter.getFriendlyDayString(date);
+            }
+            formatterNanos += System.nanoTime() - start;
+        }
+
+        Log.d(LOG_TAG, "Formatting " + FORECAST_DAYS + " days, " + PASSES + " passes: " +
+                "per call " + perCallNanos / 1000 + "us, " +
+                "formatter " + formatterNanos / 1000 + "us");
+    }
+
+    // The formatting Utility did before FriendlyDateFormatter, kept here as the reference.
+
+    private String legacyFriendlyDayString(long dateInMillis) {
+        Time time = new Time();
+        time.setToNow();
+        long currentTime = System.currentTimeMillis();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
+
+        if (julianDay == currentJulianDay) {
+            String today = mContext.getString(R.string.today);
+            return String.format(mContext.getString(
+                    R.string.format_full_friendly_date, today, legacyMonthDay(dateInMillis)));
+        } else if (julianDay < currentJulianDay + 7) {
+            return legacyDayName(dateInMillis);
+        } else {
+            SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
+            return shortenedDateFormat.format(dateInMillis);
+        }
+    }
+
+    private String legacyDayName(long dateInMillis) {
+        Time t = new Time();
+        t.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
+        if (julianDay == currentJulianDay) {
+            return mContext.getString(R.string.today);
+        } else if (julianDay == currentJulianDay + 1) {
+            return mContext.getString(R.string.tomorrow);
+        } else {
+            SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
+            return dayFormat.format(dateInMillis);
+        }
+    }
+
+    private String legacyMonthDay(long dateInMillis) {
+        Time time = new Time();
+        time.setToNow();
+        SimpleDateFormat dbDateFormat = new SimpleDateFormat(Utility.DATE_FORMAT);
+        SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMMM dd");
+        return monthDayFormat.format(dateInMillis);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TestStartupScheduler extends AndroidTestCase {
+
+    private final List<String> mRan = Collections.synchronizedList(new ArrayList<String>());
+
+    private StartupScheduler.Task recordingTask(final String name, int priority,
+                                                String... dependencies) {
+        return new StartupScheduler.Task(name, priority, dependencies) {
+            @Override
+            public void run() {
+                mRan.add(name);
+            }
+        };
+    }
+
+    /*
+        Every task runs exactly once, and only after the tasks it depends on.
+     */
+    public void testDependenciesRunFirst() throws InterruptedException {
+        StartupScheduler scheduler = new StartupScheduler()
+                .add(recordingTask("c", StartupScheduler.PRIORITY_HIGH, "a", "b"))
+                .add(recordingTask("b", StartupScheduler.PRIORITY_LOW, "a"))
+                .add(recordingTask("a", StartupScheduler.PRIORITY_LOW))
+                .add(recordingTask("d", StartupScheduler.PRIORITY_NORMAL));
+        scheduler.start();
+        assertTrue("Startup tasks didn't finish", scheduler.awaitCompletion(5000));
+
+        assertEquals(4, mRan.size());
+        assertTrue(mRan.containsAll(Arrays.asList("a", "b", "c", "d")));
+        assertTrue(mRan.indexOf("a") < mRan.indexOf("b"));
+        assertTrue(mRan.indexOf("b") < mRan.indexOf("c"));
+    }
+
+    /*
+        A failing task is logged and counted as done, so what depends on it still runs.
+     */
+    public void testFailedTaskDoesNotBlockDependents() throws InterruptedException {
+        StartupScheduler scheduler = new StartupScheduler()
+                .add(new StartupScheduler.Task("broken", StartupScheduler.PRIORITY_NORMAL) {
+                    @Override
+                    public void run() {
+                        throw new IllegalStateException("expected by the test");
+                    }
+                })
+                .add(recordingTask("after", StartupScheduler.PRIORITY_NORMAL, "broken"));
+        scheduler.start();
+        assertTrue("Startup tasks didn't finish", scheduler.awaitCompletion(5000));
+        assertEquals(Collections.singletonList("after"), mRan);
+    }
+
+    public void testRejectsBadGraphs() {
+        try {
+            new StartupScheduler()
+                    .add(recordingTask("a", StartupScheduler.PRIORITY_NORMAL, "missing"))
+                    .start();
+            fail("A dependency on an unknown task should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            new StartupScheduler()
+                    .add(recordingTask("a", StartupScheduler.PRIORITY_NORMAL, "b"))
+                    .add(recordingTask("b", StartupScheduler.PRIORITY_NORMAL, "a"))
+                    .start();
+            fail("A dependency cycle should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertTrue(mRan.isEmpty());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+public class TestSunshineSettings extends AndroidTestCase {
+
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mSavedUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mSavedUnits = mPrefs.getString(mUnitsKey, mContext.getString(R.string.pref_units_metric));
+        mPrefs.edit().putString(mUnitsKey, mContext.getString(R.string.pref_units_metric)).commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().putString(mUnitsKey, mSavedUnits).commit();
+        super.tearDown();
+    }
+
+    /*
+        The snapshot is replaced as a whole when a preference changes, observers see both the
+        old and new snapshots, and the old one is left as it was.
+     */
+    public void testSnapshotFollowsPreferences() {
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return SunshineSettings.get(mContext).isMetric;
+            }
+        }.run();
+
+        final SunshineSettings before = SunshineSettings.get(mContext);
+        final SunshineSettings[] seen = new SunshineSettings[2];
+        SunshineSettings.Observer observer = new SunshineSettings.Observer() {
+            @Override
+            public void onSettingsChanged(SunshineSettings previous, SunshineSettings current) {
+                seen[0] = previous;
+                seen[1] = current;
+            }
+        };
+        SunshineSettings.addObserver(observer);
+        try {
+            mPrefs.edit().putString(mUnitsKey,
+                    mContext.getString(R.string.pref_units_imperial)).commit();
+
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    // The snapshot is swapped before observers run, so wait for both.
+                    return !SunshineSettings.get(mContext).isMetric && seen[1] != null;
+                }
+            }.run();
+        } finally {
+            SunshineSettings.removeObserver(observer);
+        }
+
+        assertTrue("The old snapshot must not change", before.isMetric);
+        assertSame("Observer should get the snapshot that was replaced", before, seen[0]);
+        assertSame("Observer should get the new snapshot",
+                SunshineSettings.get(mContext), seen[1]);
+        assertFalse(Utility.isMetric(mContext));
+        assertEquals(before.location, SunshineSettings.get(mContext).location);
+    }
+}
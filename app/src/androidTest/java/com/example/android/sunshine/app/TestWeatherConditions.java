@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.shared.WeatherConditions;
+
+/*
+    Checks the weather code lookup table over every code, against the if/else chains it
+    replaced, and times the two.
+ */
+public class TestWeatherConditions extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherConditions.class.getSimpleName();
+
+    // Comfortably past both ends of the code range.
+    private static final int FIRST_CODE = -100;
+    private static final int LAST_CODE = 1100;
+    private static final int PASSES = 200;
+
+    // Every code OpenWeatherMap documents.
+    private static final int[] DOCUMENTED_CODES = {
+            200, 201, 202, 210, 211, 212, 221, 230, 231, 232,
+            300, 301, 302, 310, 311, 312, 313, 314, 321,
+            500, 501, 502, 503, 504, 511, 520, 521, 522, 531,
+            600, 601, 602, 611, 612, 615, 616, 620, 621, 622,
+            701, 711, 721, 731, 741, 751, 761, 762, 771, 781,
+            800, 801, 802, 803, 804,
+            900, 901, 902, 903, 904, 905, 906,
+            951, 952, 953, 954, 955, 956, 957, 958, 959, 960, 961, 962
+    };
+
+    // Codes the old chains returned -1 for, with the conditions they map to now.
+    private static final int[][] NEWLY_MAPPED = {
+            {762, WeatherConditions.FOG},
+            {771, WeatherConditions.STORM},
+            {900, WeatherConditions.STORM},
+            {903, WeatherConditions.SNOW},
+            {904, WeatherConditions.CLEAR},
+            {905, WeatherConditions.CLOUDS},
+            {906, WeatherConditions.SNOW},
+            {951, WeatherConditions.CLEAR},
+            {957, WeatherConditions.CLOUDS},
+            {962, WeatherConditions.STORM}
+    };
+
+    public void testMatchesOldMappingWhereItHadOne() {
+        for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+            int oldIcon = legacyIconResource(code);
+            if (oldIcon != -1) {
+                assertEquals("Icon differs for code " + code,
+                        oldIcon, Utility.getIconResourceForWeatherCondition(code));
+            }
+            int oldArt = legacyArtResource(code);
+            if (oldArt != -1) {
+                assertEquals("Art differs for code " + code,
+                        oldArt, Utility.getArtResourceForWeatherCondition(code));
+            }
+        }
+    }
+
+    public void testEveryDocumentedCodeIsMapped() {
+        for (int code : DOCUMENTED_CODES) {
+            assertTrue("No condition for code " + code,
+                    WeatherConditions.getCondition(code) != WeatherConditions.UNKNOWN);
+            assertTrue("No icon for code " + code,
+                    Utility.getIconResourceForWeatherCondition(code) != -1);
+            assertTrue("No art for code " + code,
+                    Utility.getArtResourceForWeatherCondition(code) != -1);
+        }
+        for (int[] mapping : NEWLY_MAPPED) {
+            assertEquals("Unexpected condition for code " + mapping[0],
+                    mapping[1], WeatherConditions.getCondition(mapping[0]));
+        }
+    }
+
+    public void testUnknownCodes() {
+        int[] unknown = {Integer.MIN_VALUE, -1, 0, 199, 233, 299, 400, 505, 700, 799, 805,
+                899, 907, 950, 963, 1000, Integer.MAX_VALUE};
+        for (int code : unknown) {
+            assertEquals("Code " + code + " should be unknown",
+                    WeatherConditions.UNKNOWN, WeatherConditions.getCondition(code));
+            assertEquals(-1, Utility.getIconResourceForWeatherCondition(code));
+            assertEquals(-1, Utility.getArtResourceForWeatherCondition(code));
+        }
+    }
+
+    public void testTableVersusIfChain() {
+        // Sum the results so neither loop can be optimized away.
+        long checksum = 0;
+
+        long chainStart = System.nanoTime();
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+                checksum += legacyIconResource(code);
+            }
+        }
+        long chainNanos = System.nanoTime() - chainStart;
+
+        long tableStart = System.nanoTime();
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+                checksum += Utility.getIconResourceForWeatherCondition(code);
+            }
+        }
+        long tableNanos = System.nanoTime() - tableStart;
+
+        int lookups = PASSES * (LAST_CODE - FIRST_CODE + 1);
+        Log.d(LOG_TAG, lookups + " lookups: if chain " + chainNanos / 1000 + "us, " +
+                "table " + tableNanos / 1000 + "us (checksum " + checksum + ")");
+    }
+
+    // The mappings Utility had before the table, kept here as the reference.
+
+    private static int legacyIconResource(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+
+    private static int legacyArtResource(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return -1;
+    }
+}
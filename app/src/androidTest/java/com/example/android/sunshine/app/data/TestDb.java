@@ -55,6 +55,10 @@ public class TestDb extends AndroidTestCase {
         final HashSet<String> tableNameHashSet = new HashSet<String>();
         tableNameHashSet.add(WeatherContract.LocationEntry.TABLE_NAME);
         tableNameHashSet.add(WeatherContract.WeatherEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.HourlyEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.HistoryEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.RollupEntry.TABLE_MONTHLY);
+        tableNameHashSet.add(WeatherContract.RollupEntry.TABLE_YEARLY);
 
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
         SQLiteDatabase db = new WeatherDbHelper(
@@ -177,6 +181,51 @@ public class TestDb extends AndroidTestCase {
     }
 
 
+
+    /*
+        An upgrade starts the forecast over but keeps the archive, which can't be fetched
+        again, and the locations it refers to.
+     */
+    public void testUpgradeKeepsHistory() {
+        long locationRowId = insertLocation();
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        assertTrue(db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null,
+                TestUtilities.createWeatherValues(locationRowId)) != -1);
+        ContentValues historyValues = TestUtilities.createWeatherValues(locationRowId);
+        assertTrue(db.insert(WeatherContract.HistoryEntry.TABLE_NAME, null, historyValues) != -1);
+        ContentValues rollupValues = new ContentValues();
+        rollupValues.put(WeatherContract.RollupEntry.COLUMN_LOC_KEY, locationRowId);
+        rollupValues.put(WeatherContract.RollupEntry.COLUMN_PERIOD, 201412);
+        rollupValues.put(WeatherContract.RollupEntry.COLUMN_COUNT, 1);
+        rollupValues.put(WeatherContract.RollupEntry.COLUMN_MIN_TEMP, 65.0);
+        rollupValues.put(WeatherContract.RollupEntry.COLUMN_MAX_TEMP, 75.0);
+        rollupValues.put(WeatherContract.RollupEntry.COLUMN_SUM_MIN_TEMP, 65.0);
+        rollupValues.put(WeatherContract.RollupEntry.COLUMN_SUM_MAX_TEMP, 75.0);
+        assertTrue(db.insert(WeatherContract.RollupEntry.TABLE_MONTHLY, null, rollupValues) != -1);
+
+        dbHelper.onUpgrade(db, db.getVersion(), db.getVersion() + 1);
+
+        assertEquals(0, count(db, WeatherContract.WeatherEntry.TABLE_NAME));
+        assertEquals(1, count(db, WeatherContract.LocationEntry.TABLE_NAME));
+        Cursor cursor = db.query(WeatherContract.HistoryEntry.TABLE_NAME,
+                null, null, null, null, null, null);
+        assertTrue("Error: History didn't survive the upgrade", cursor.moveToFirst());
+        TestUtilities.validateCurrentRecord("Error: History changed in the upgrade",
+                cursor, historyValues);
+        cursor.close();
+        assertEquals(1, count(db, WeatherContract.RollupEntry.TABLE_MONTHLY));
+        dbHelper.close();
+    }
+
+    private static int count(SQLiteDatabase db, String table) {
+        Cursor cursor = db.query(table, null, null, null, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
     /*
         Students: This is a helper method for the testWeatherTable quiz. You can move your
         code from testLocationTable to here so that you can call this code from both
@@ -16,6 +16,7 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderClient;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.pm.PackageManager;
@@ -24,12 +25,23 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.RollupEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SnapshotEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.TimeZone;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -56,6 +68,11 @@ public class TestProvider extends AndroidTestCase {
                 null,
                 null
         );
+        mContext.getContentResolver().delete(
+                HourlyEntry.CONTENT_URI,
+                null,
+                null
+        );
         mContext.getContentResolver().delete(
                 LocationEntry.CONTENT_URI,
                 null,
@@ -92,11 +109,17 @@ public class TestProvider extends AndroidTestCase {
     }
 
     // Since we want each test to start with a clean slate, run deleteAllRecords
-    // in setUp (called by the test runner before each test).
+    // in setUp (called by the test runner before each test).  History and rollups are only
+    // written by the provider as days age out, so there is no URI to delete them through.
     @Override
     protected void setUp() throws Exception {
         super.setUp();
         deleteAllRecords();
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        db.delete(HistoryEntry.TABLE_NAME, null, null);
+        db.delete(RollupEntry.TABLE_MONTHLY, null, null);
+        db.delete(RollupEntry.TABLE_YEARLY, null, null);
+        db.close();
     }
 
     /*
@@ -512,4 +535,311 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        This test exports the database through the snapshot stream, wipes it, and imports the
+        snapshot back, checking that every weather row survives the round trip.
+     */
+    public void testSnapshotRoundTrip() throws IOException {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        InputStream in = mContext.getContentResolver().openInputStream(SnapshotEntry.CONTENT_URI);
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            snapshot.write(buffer, 0, read);
+        }
+        in.close();
+        assertTrue("Error: Snapshot export was empty", snapshot.size() > 0);
+
+        deleteAllRecords();
+
+        OutputStream out = mContext.getContentResolver().openOutputStream(
+                SnapshotEntry.buildImportUri("testSnapshotRoundTrip"));
+        out.write(snapshot.toByteArray());
+        out.close();
+
+        // The import runs on the provider's side of the pipe; wait for it to finish.
+        Bundle result = mContext.getContentResolver().call(SnapshotEntry.CONTENT_URI,
+                SnapshotEntry.METHOD_AWAIT_IMPORT, "testSnapshotRoundTrip", null);
+        assertNull(result.getString(SnapshotEntry.EXTRA_ERROR));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, result.getInt(SnapshotEntry.EXTRA_IMPORTED));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        for ( int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext() ) {
+            // The location id may change on import, so only compare the weather values.
+            bulkInsertContentValues[i].remove(WeatherEntry.COLUMN_LOC_KEY);
+            TestUtilities.validateCurrentRecord("testSnapshotRoundTrip.  Error validating WeatherEntry " + i,
+                    cursor, bulkInsertContentValues[i]);
+        }
+        cursor.close();
+    }
+
+    /*
+        A replace without its extras is refused with a message rather than crashing in the
+        provider.
+     */
+    public void testReplaceForecastWindowRejectsMissingExtras() {
+        try {
+            mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                    WeatherEntry.METHOD_REPLACE_FORECAST_WINDOW, null, null);
+            fail("A replace without extras should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        Bundle extras = new Bundle();
+        extras.putLong(WeatherEntry.EXTRA_PRUNE_DATE, 0);
+        try {
+            mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                    WeatherEntry.METHOD_REPLACE_FORECAST_WINDOW, null, extras);
+            fail("A replace without values should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /*
+        This test checks that the provider records latency and row counts against the
+        UriMatcher code of each call.
+     */
+    public void testProviderStats() {
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        WeatherProvider provider = (WeatherProvider) client.getLocalContentProvider();
+        provider.getStats().reset();
+
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI, null, null, null, null);
+        cursor.close();
+
+        ProviderStats.Entry insert =
+                provider.getStats().entry(ProviderStats.OP_INSERT, WeatherProvider.LOCATION);
+        assertEquals(1, insert.count);
+        assertEquals(1, insert.rows);
+
+        ProviderStats.Entry bulkInsert =
+                provider.getStats().entry(ProviderStats.OP_BULK_INSERT, WeatherProvider.WEATHER);
+        assertEquals(1, bulkInsert.count);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, bulkInsert.rows);
+
+        ProviderStats.Entry query =
+                provider.getStats().entry(ProviderStats.OP_QUERY, WeatherProvider.WEATHER);
+        assertEquals(1, query.count);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, query.rows);
+        assertTrue(query.percentileMicros(99) >= query.percentileMicros(50));
+
+        // Writes measure their lock wait; queries don't take the lock and don't pretend to.
+        assertEquals(1, insert.lockWaitCount);
+        assertEquals(1, bulkInsert.lockWaitCount);
+        assertEquals(0, query.lockWaitCount);
+
+        // A bulk insert without a fast path is recorded once, not again per row as inserts.
+        ContentValues[] locations = new ContentValues[2];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = TestUtilities.createNorthPoleLocationValues();
+            locations[i].put(LocationEntry.COLUMN_LOCATION_SETTING, "stats-" + i);
+        }
+        assertEquals(locations.length,
+                mContext.getContentResolver().bulkInsert(LocationEntry.CONTENT_URI, locations));
+        ProviderStats.Entry bulkLocations =
+                provider.getStats().entry(ProviderStats.OP_BULK_INSERT, WeatherProvider.LOCATION);
+        assertEquals(1, bulkLocations.count);
+        assertEquals(locations.length, bulkLocations.rows);
+        assertEquals(1, insert.count);
+
+        client.release();
+    }
+
+    /*
+        This test replaces a forecast window through the provider call and checks that the new
+        days are in, the expired ones are gone, and observers were told about it.
+     */
+    public void testReplaceForecastWindow() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        // Seed an expired day that the replace should prune.
+        ContentValues expired = TestUtilities.createWeatherValues(locationRowId);
+        expired.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE - 1000*60*60*24);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, expired);
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+
+        Bundle extras = new Bundle();
+        extras.putParcelableArray(WeatherEntry.EXTRA_VALUES, createBulkInsertWeatherValues(locationRowId));
+        extras.putLong(WeatherEntry.EXTRA_PRUNE_DATE, expired.getAsLong(WeatherEntry.COLUMN_DATE));
+        Bundle result = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherEntry.METHOD_REPLACE_FORECAST_WINDOW, null, extras);
+
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, result.getInt(WeatherEntry.EXTRA_INSERTED));
+        assertEquals(1, result.getInt(WeatherEntry.EXTRA_DELETED));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI, null, null, null, null);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        This test bulk inserts two days of 3-hourly slots and reads them back raw, folded into
+        6 hour buckets and folded into days.
+     */
+    public void testHourlyDownsampling() {
+        checkHourlyDownsampling();
+    }
+
+    /*
+        Whole-day buckets follow local days, as the daily rows do, not UTC ones.
+     */
+    public void testHourlyDownsamplingFollowsLocalDays() {
+        TimeZone defaultZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+            checkHourlyDownsampling();
+            deleteAllRecords();
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+            checkHourlyDownsampling();
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+
+    private void checkHourlyDownsampling() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        long hourInMillis = 1000*60*60;
+        // Buckets are aligned to local time, so start the slots on a local midnight, as the
+        // daily rows are stored.
+        long firstDay = WeatherContract.normalizeDate(TestUtilities.TEST_DATE);
+        int slots = 16;
+        ContentValues[] hourlyValues = new ContentValues[slots];
+        for (int i = 0; i < slots; i++) {
+            ContentValues values = new ContentValues();
+            values.put(HourlyEntry.COLUMN_LOC_KEY, locationRowId);
+            values.put(HourlyEntry.COLUMN_DATE, firstDay + i * 3 * hourInMillis);
+            values.put(HourlyEntry.COLUMN_WEATHER_ID, i == 5 ? 201 : 800);
+            values.put(HourlyEntry.COLUMN_TEMP, (double) i);
+            values.put(HourlyEntry.COLUMN_HUMIDITY, 50.0);
+            values.put(HourlyEntry.COLUMN_PRESSURE, 1000.0);
+            values.put(HourlyEntry.COLUMN_WIND_SPEED, 2.0);
+            values.put(HourlyEntry.COLUMN_DEGREES, 90.0);
+            hourlyValues[i] = values;
+        }
+        int inserted = mContext.getContentResolver().bulkInsert(HourlyEntry.CONTENT_URI, hourlyValues);
+        assertEquals(slots, inserted);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                HourlyEntry.buildHourlyLocationWithStartDate(TestUtilities.TEST_LOCATION, firstDay),
+                null, null, null, HourlyEntry.COLUMN_DATE + " ASC");
+        assertEquals(slots, cursor.getCount());
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                HourlyEntry.buildHourlyLocationDownsampled(TestUtilities.TEST_LOCATION, firstDay, 6),
+                null, null, null, null);
+        assertEquals(slots / 2, cursor.getCount());
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                HourlyEntry.buildHourlyLocationDownsampled(TestUtilities.TEST_LOCATION, firstDay, 24),
+                null, null, null, null);
+        assertEquals(2, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(firstDay, cursor.getLong(cursor.getColumnIndex(HourlyEntry.COLUMN_DATE)));
+        assertEquals(8, cursor.getInt(cursor.getColumnIndex(HourlyEntry.COLUMN_SAMPLE_COUNT)));
+        assertEquals(0.0, cursor.getDouble(cursor.getColumnIndex(HourlyEntry.COLUMN_MIN_TEMP)));
+        assertEquals(7.0, cursor.getDouble(cursor.getColumnIndex(HourlyEntry.COLUMN_MAX_TEMP)));
+        assertEquals(3.5, cursor.getDouble(cursor.getColumnIndex(HourlyEntry.COLUMN_TEMP)));
+        // The storm slot wins over the clear ones.
+        assertEquals(201, cursor.getInt(cursor.getColumnIndex(HourlyEntry.COLUMN_WEATHER_ID)));
+        cursor.close();
+    }
+
+    /*
+        This test ages a forecast window out in two steps and checks that the days land in the
+        history table and that the rollups add up across both steps without double counting.
+     */
+    public void testHistoryRollup() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] window = createBulkInsertWeatherValues(locationRowId);
+        Bundle extras = new Bundle();
+        extras.putParcelableArray(WeatherEntry.EXTRA_VALUES, window);
+        extras.putLong(WeatherEntry.EXTRA_PRUNE_DATE, 0);
+        mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherEntry.METHOD_REPLACE_FORECAST_WINDOW, null, extras);
+
+        // Age out the first half, then the rest, so the second step adds onto existing rollups.
+        long midDate = window[BULK_INSERT_RECORDS_TO_INSERT / 2 - 1].getAsLong(WeatherEntry.COLUMN_DATE);
+        long lastDate = window[BULK_INSERT_RECORDS_TO_INSERT - 1].getAsLong(WeatherEntry.COLUMN_DATE);
+        for (long pruneDate : new long[]{midDate, lastDate}) {
+            extras = new Bundle();
+            extras.putParcelableArray(WeatherEntry.EXTRA_VALUES, new ContentValues[0]);
+            extras.putLong(WeatherEntry.EXTRA_PRUNE_DATE, pruneDate);
+            mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                    WeatherEntry.METHOD_REPLACE_FORECAST_WINDOW, null, extras);
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(
+                HistoryEntry.buildHistoryLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+
+        double expectedMaxSum = 0;
+        for (ContentValues values : window) {
+            expectedMaxSum += values.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP);
+        }
+
+        cursor = mContext.getContentResolver().query(
+                RollupEntry.buildYearlyLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        int days = 0;
+        double maxSum = 0;
+        while (cursor.moveToNext()) {
+            int count = cursor.getInt(cursor.getColumnIndex(RollupEntry.COLUMN_COUNT));
+            days += count;
+            maxSum += count * cursor.getDouble(cursor.getColumnIndex(RollupEntry.COLUMN_MEAN_MAX_TEMP));
+        }
+        cursor.close();
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, days);
+        assertEquals(expectedMaxSum, maxSum, 0.001);
+
+        cursor = mContext.getContentResolver().query(
+                RollupEntry.buildMonthlyLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        days = 0;
+        while (cursor.moveToNext()) {
+            days += cursor.getInt(cursor.getColumnIndex(RollupEntry.COLUMN_COUNT));
+        }
+        cursor.close();
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, days);
+    }
 }
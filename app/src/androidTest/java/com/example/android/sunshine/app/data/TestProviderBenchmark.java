@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.RollupEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Timings for the provider's write paths.  These don't assert on absolute numbers, since
+    those depend on the device; they log them so runs can be compared.
+ */
+public class TestProviderBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestProviderBenchmark.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int FORECAST_DAYS = 14;
+    private static final int SYNCS = 200;
+
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        db.delete(HistoryEntry.TABLE_NAME, null, null);
+        db.delete(RollupEntry.TABLE_MONTHLY, null, null);
+        db.delete(RollupEntry.TABLE_YEARLY, null, null);
+        db.close();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationRowId = ContentUris.parseId(locationUri);
+    }
+
+    private ContentValues[] createForecastWindow(long startDate) {
+        ContentValues[] window = new ContentValues[FORECAST_DAYS];
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            ContentValues values = TestUtilities.createWeatherValues(mLocationRowId);
+            values.put(WeatherEntry.COLUMN_DATE, startDate + i * DAY_IN_MILLIS);
+            window[i] = values;
+        }
+        return window;
+    }
+
+    /*
+        Simulates a run of daily syncs, each moving the window forward by a day, once with the
+        old bulkInsert-then-delete sequence and once with the single replace call.
+     */
+    public void testReplaceWindowVersusTwoStep() {
+        long twoStepNanos = 0;
+        for (int sync = 0; sync < SYNCS; sync++) {
+            long startDate = TestUtilities.TEST_DATE + sync * DAY_IN_MILLIS;
+            ContentValues[] window = createForecastWindow(startDate);
+
+            long start = System.nanoTime();
+            mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, window);
+            mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                    WeatherEntry.COLUMN_DATE + " <= ?",
+                    new String[]{Long.toString(startDate - DAY_IN_MILLIS)});
+            twoStepNanos += System.nanoTime() - start;
+        }
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+
+        long replaceNanos = 0;
+        for (int sync = 0; sync < SYNCS; sync++) {
+            long startDate = TestUtilities.TEST_DATE + sync * DAY_IN_MILLIS;
+            Bundle extras = new Bundle();
+            extras.putParcelableArray(WeatherEntry.EXTRA_VALUES, createForecastWindow(startDate));
+            extras.putLong(WeatherEntry.EXTRA_PRUNE_DATE, startDate - DAY_IN_MILLIS);
+
+            long start = System.nanoTime();
+            mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                    WeatherEntry.METHOD_REPLACE_FORECAST_WINDOW, null, extras);
+            replaceNanos += System.nanoTime() - start;
+        }
+
+        Log.d(LOG_TAG, "two-step sync: " + twoStepNanos / SYNCS / 1000 + "us, " +
+                "replace window: " + replaceNanos / SYNCS / 1000 + "us");
+    }
+
+    private static final int HISTORY_LOCATIONS = 20;
+    private static final int HISTORY_DAYS = 3 * 365;
+
+    /*
+        Builds years of daily history for many locations, ages it all out in one replace call,
+        and then compares reading monthly trends from the rollup table with aggregating the
+        raw history rows.
+     */
+    public void testTrendQueriesOnYearsOfHistory() {
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        String[] settings = new String[HISTORY_LOCATIONS];
+        long firstDate = WeatherContract.normalizeDate(System.currentTimeMillis())
+                - HISTORY_DAYS * DAY_IN_MILLIS;
+        db.beginTransaction();
+        try {
+            for (int l = 0; l < HISTORY_LOCATIONS; l++) {
+                settings[l] = "bench-" + l;
+                ContentValues location = TestUtilities.createNorthPoleLocationValues();
+                location.put(LocationEntry.COLUMN_LOCATION_SETTING, settings[l]);
+                long locationId = db.insert(LocationEntry.TABLE_NAME, null, location);
+                for (int d = 0; d < HISTORY_DAYS; d++) {
+                    ContentValues values = TestUtilities.createWeatherValues(locationId);
+                    values.put(WeatherEntry.COLUMN_DATE, firstDate + d * DAY_IN_MILLIS);
+                    values.put(WeatherEntry.COLUMN_MAX_TEMP, 10 + (d % 30));
+                    values.put(WeatherEntry.COLUMN_MIN_TEMP, (d % 20) - 5);
+                    db.insert(WeatherEntry.TABLE_NAME, null, values);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        Bundle extras = new Bundle();
+        extras.putParcelableArray(WeatherEntry.EXTRA_VALUES, new ContentValues[0]);
+        extras.putLong(WeatherEntry.EXTRA_PRUNE_DATE, firstDate + HISTORY_DAYS * DAY_IN_MILLIS);
+        long start = System.nanoTime();
+        Bundle result = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherEntry.METHOD_REPLACE_FORECAST_WINDOW, null, extras);
+        long archiveNanos = System.nanoTime() - start;
+        assertEquals(HISTORY_LOCATIONS * HISTORY_DAYS, result.getInt(WeatherEntry.EXTRA_DELETED));
+
+        long rollupNanos = 0;
+        long rawNanos = 0;
+        for (String setting : settings) {
+            start = System.nanoTime();
+            Cursor rollup = mContext.getContentResolver().query(
+                    RollupEntry.buildMonthlyLocation(setting), null, null, null, null);
+            int rollupRows = rollup.getCount();
+            rollup.close();
+            rollupNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Cursor raw = db.rawQuery("SELECT CAST(strftime('%Y%m', " + WeatherEntry.COLUMN_DATE +
+                    " / 1000, 'unixepoch', 'localtime') AS INTEGER) AS period, COUNT(*), " +
+                    "MIN(" + WeatherEntry.COLUMN_MIN_TEMP + "), MAX(" + WeatherEntry.COLUMN_MAX_TEMP + "), " +
+                    "AVG(" + WeatherEntry.COLUMN_MIN_TEMP + "), AVG(" + WeatherEntry.COLUMN_MAX_TEMP + ") " +
+                    "FROM " + HistoryEntry.TABLE_NAME + " WHERE " + WeatherEntry.COLUMN_LOC_KEY +
+                    " = (SELECT " + LocationEntry._ID + " FROM " + LocationEntry.TABLE_NAME +
+                    " WHERE " + LocationEntry.COLUMN_LOCATION_SETTING + " = ?) GROUP BY period",
+                    new String[]{setting});
+            int rawRows = raw.getCount();
+            raw.close();
+            rawNanos += System.nanoTime() - start;
+
+            assertEquals(rawRows, rollupRows);
+        }
+        db.close();
+
+        Log.d(LOG_TAG, "archive " + HISTORY_LOCATIONS * HISTORY_DAYS + " days: " +
+                archiveNanos / 1000 + "us, monthly trend from rollups: " +
+                rollupNanos / HISTORY_LOCATIONS / 1000 + "us, from raw history: " +
+                rawNanos / HISTORY_LOCATIONS / 1000 + "us");
+    }
+}
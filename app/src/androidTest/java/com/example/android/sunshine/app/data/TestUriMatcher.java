@@ -36,6 +36,14 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    // content://com.example.android.sunshine.app/hourly"
+    private static final Uri TEST_HOURLY_DIR = WeatherContract.HourlyEntry.CONTENT_URI;
+    private static final Uri TEST_HOURLY_WITH_LOCATION_DIR = WeatherContract.HourlyEntry.buildHourlyLocationDownsampled(LOCATION_QUERY, TEST_DATE, 6);
+    private static final Uri TEST_HISTORY_WITH_LOCATION_DIR = WeatherContract.HistoryEntry.buildHistoryLocation(LOCATION_QUERY);
+    private static final Uri TEST_ROLLUP_MONTHLY_DIR = WeatherContract.RollupEntry.buildMonthlyLocation(LOCATION_QUERY);
+    private static final Uri TEST_ROLLUP_YEARLY_DIR = WeatherContract.RollupEntry.buildYearlyLocation(LOCATION_QUERY);
+    // content://com.example.android.sunshine.app/snapshot"
+    private static final Uri TEST_SNAPSHOT = WeatherContract.SnapshotEntry.CONTENT_URI;
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
@@ -53,5 +61,17 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The HOURLY URI was matched incorrectly.",
+                testMatcher.match(TEST_HOURLY_DIR), WeatherProvider.HOURLY);
+        assertEquals("Error: The HOURLY WITH LOCATION URI was matched incorrectly.",
+                testMatcher.match(TEST_HOURLY_WITH_LOCATION_DIR), WeatherProvider.HOURLY_WITH_LOCATION);
+        assertEquals("Error: The HISTORY WITH LOCATION URI was matched incorrectly.",
+                testMatcher.match(TEST_HISTORY_WITH_LOCATION_DIR), WeatherProvider.HISTORY_WITH_LOCATION);
+        assertEquals("Error: The MONTHLY ROLLUP URI was matched incorrectly.",
+                testMatcher.match(TEST_ROLLUP_MONTHLY_DIR), WeatherProvider.ROLLUP_MONTHLY_WITH_LOCATION);
+        assertEquals("Error: The YEARLY ROLLUP URI was matched incorrectly.",
+                testMatcher.match(TEST_ROLLUP_YEARLY_DIR), WeatherProvider.ROLLUP_YEARLY_WITH_LOCATION);
+        assertEquals("Error: The SNAPSHOT URI was matched incorrectly.",
+                testMatcher.match(TEST_SNAPSHOT), WeatherProvider.SNAPSHOT);
     }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.google.android.gms.wearable.DataMap;
+
+public class TestWatchPushFilter extends AndroidTestCase {
+
+    private SharedPreferences mPrefs;
+    private String mKey;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mKey = mContext.getString(R.string.pref_last_watch_payload);
+        mPrefs.edit().remove(mKey).commit();
+        WatchPushFilter.onQueueDropped();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().remove(mKey).commit();
+        WatchPushFilter.onQueueDropped();
+        super.tearDown();
+    }
+
+    private static DataMap weather(int weatherId, double high, double low) {
+        DataMap dataMap = new DataMap();
+        dataMap.putInt("weather_id", weatherId);
+        dataMap.putDouble("high", high);
+        dataMap.putDouble("low", low);
+        return dataMap;
+    }
+
+    public void testHashIsCanonical() {
+        DataMap reordered = new DataMap();
+        reordered.putDouble("low", 12);
+        reordered.putDouble("high", 21);
+        reordered.putInt("weather_id", 800);
+        assertEquals("Key order shouldn't change the hash",
+                WatchPushFilter.hash(weather(800, 21, 12)), WatchPushFilter.hash(reordered));
+
+        assertFalse(WatchPushFilter.hash(weather(800, 21, 12))
+                == WatchPushFilter.hash(weather(801, 21, 12)));
+        assertFalse("Swapped values should hash differently",
+                WatchPushFilter.hash(weather(800, 21, 12))
+                        == WatchPushFilter.hash(weather(800, 12, 21)));
+    }
+
+    /*
+        Once a payload is acknowledged the same one is suppressed, and a different one isn't.
+     */
+    public void testSuppressesAcknowledgedPayload() {
+        long sunny = WatchPushFilter.hash(weather(800, 21, 12));
+        long rainy = WatchPushFilter.hash(weather(500, 15, 9));
+
+        assertTrue(WatchPushFilter.shouldPush(mContext, sunny));
+        WatchPushFilter.onPushAcknowledged(mContext, sunny);
+
+        int suppressed = WatchPushFilter.getSuppressedCount();
+        assertFalse(WatchPushFilter.shouldPush(mContext, sunny));
+        assertEquals(suppressed + 1, WatchPushFilter.getSuppressedCount());
+
+        assertTrue(WatchPushFilter.shouldPush(mContext, rainy));
+    }
+
+    /*
+        The watch has X and Y is queued but not yet delivered.  A sync that brings X back has to
+        send it, or Y would arrive later and leave the watch disagreeing with the phone.  Once
+        X is queued, Y finishing late doesn't make X look delivered.
+     */
+    public void testPendingPayloadIsNotSuppressed() {
+        long x = WatchPushFilter.hash(weather(800, 21, 12));
+        long y = WatchPushFilter.hash(weather(500, 15, 9));
+
+        WatchPushFilter.onPushQueued(x);
+        WatchPushFilter.onPushAcknowledged(mContext, x);
+
+        assertTrue(WatchPushFilter.shouldPush(mContext, y));
+        WatchPushFilter.onPushQueued(y);
+        assertFalse("The queued payload should be suppressed",
+                WatchPushFilter.shouldPush(mContext, y));
+
+        assertTrue("The acknowledged payload should be sent over a pending one",
+                WatchPushFilter.shouldPush(mContext, x));
+        WatchPushFilter.onPushQueued(x);
+
+        WatchPushFilter.onPushAcknowledged(mContext, y);
+        assertTrue(WatchPushFilter.shouldPush(mContext, y));
+        assertFalse(WatchPushFilter.shouldPush(mContext, x));
+
+        WatchPushFilter.onPushAcknowledged(mContext, x);
+        assertFalse(WatchPushFilter.shouldPush(mContext, x));
+    }
+}
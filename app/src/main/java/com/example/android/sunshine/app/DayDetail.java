@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.LongSparseArray;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Everything {@link DetailFragment} shows for one day, formatted and ready to bind.
+ *
+ * The forecast list loads the detail columns along with its own and publishes a DayDetail for
+ * each day it shows, so opening a day can draw straight from memory.  The detail loader still
+ * runs and its result replaces the prefetched one only if something actually differs.
+ */
+public class DayDetail {
+
+    public final long date;
+    public final int weatherId;
+    public final String dayName;
+    public final String monthDay;
+    public final String description;
+    public final String highText;
+    public final String lowText;
+    public final String humidityText;
+    public final String windText;
+    public final String pressureText;
+    public final String shareText;
+
+    // The days the forecast list loaded last, for the location it loaded them for.
+    private static final class Prefetched {
+        final String location;
+        final LongSparseArray<DayDetail> days;
+
+        Prefetched(String location, LongSparseArray<DayDetail> days) {
+            this.location = location;
+            this.days = days;
+        }
+    }
+
+    private static volatile Prefetched sPrefetched;
+
+    DayDetail(Context context, long date, int weatherId, String description, double high,
+              double low, float humidity, float windSpeed, float degrees, float pressure) {
+        this.date = date;
+        this.weatherId = weatherId;
+        this.description = description;
+        dayName = Utility.getDayName(context, date);
+        monthDay = Utility.getFormattedMonthDay(context, date);
+        highText = Utility.formatTemperature(context, high);
+        lowText = Utility.formatTemperature(context, low);
+        humidityText = context.getString(R.string.format_humidity, humidity);
+        windText = Utility.getFormattedWind(context, windSpeed, degrees);
+        pressureText = context.getString(R.string.format_pressure, pressure);
+        shareText = String.format("%s - %s - %s/%s", monthDay, description, high, low);
+    }
+
+    /**
+     * Replaces the prefetched days.  The array is published as is, so the caller must not
+     * change it afterwards.
+     */
+    static void publish(String location, LongSparseArray<DayDetail> days) {
+        sPrefetched = new Prefetched(location, days);
+    }
+
+    /**
+     * @param weatherUri a weather-for-location-and-date uri
+     * @return the prefetched detail for the uri's day, or null if the list hasn't loaded it
+     */
+    static DayDetail getPrefetched(Uri weatherUri) {
+        Prefetched prefetched = sPrefetched;
+        if (prefetched == null || weatherUri == null || weatherUri.getPathSegments().size() < 3
+                || !prefetched.location.equals(WeatherEntry.getLocationSettingFromUri(weatherUri))) {
+            return null;
+        }
+        return prefetched.days.get(WeatherEntry.getDateFromUri(weatherUri));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DayDetail)) {
+            return false;
+        }
+        DayDetail other = (DayDetail) o;
+        return date == other.date
+                && weatherId == other.weatherId
+                && equal(dayName, other.dayName)
+                && equal(monthDay, other.monthDay)
+                && equal(description, other.description)
+                && equal(highText, other.highText)
+                && equal(lowText, other.lowText)
+                && equal(humidityText, other.humidityText)
+                && equal(windText, other.windText)
+                && equal(pressureText, other.pressureText);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (date ^ (date >>> 32)) * 31 + weatherId;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
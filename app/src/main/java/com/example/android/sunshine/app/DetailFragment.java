@@ -15,10 +15,18 @@
  */
 package com.example.android.sunshine.app;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ObjectAnimator;
 import android.content.Intent;
 import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
@@ -53,6 +61,9 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     private static final int DETAIL_LOADER = 0;
 
+    // Selections closer together than this only restart the loader for the last one.
+    private static final long SELECTION_DEBOUNCE_MILLIS = 150;
+
     private static final String[] DETAIL_COLUMNS = {
             WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
             WeatherEntry.COLUMN_DATE,
@@ -92,6 +103,22 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private TextView mWindView;
     private TextView mPressureView;
 
+    private DayDetail mShownDetail;
+
+    private final Handler mHandler = new Handler();
+    private final Runnable mRestartLoader = new Runnable() {
+        @Override
+        public void run() {
+            getLoaderManager().restartLoader(DETAIL_LOADER, null, DetailFragment.this);
+        }
+    };
+
+    // A picture of the previous day, faded out over the new one.  The bitmap is kept for the
+    // next change as long as the pane keeps its size.
+    private Bitmap mFadeBitmap;
+    private Canvas mFadeCanvas;
+    private ObjectAnimator mFadeAnimator;
+
     public DetailFragment() {
         setHasOptionsMenu(true);
     }
@@ -101,7 +128,10 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
                              Bundle savedInstanceState) {
 
         Bundle arguments = getArguments();
-        if (arguments != null) {
+        if (savedInstanceState != null && savedInstanceState.containsKey(DETAIL_URI)) {
+            // showUri may have moved on from the arguments.
+            mUri = savedInstanceState.getParcelable(DETAIL_URI);
+        } else if (arguments != null) {
             mUri = arguments.getParcelable(DetailFragment.DETAIL_URI);
         }
 
@@ -115,9 +145,34 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         mHumidityView = (TextView) rootView.findViewById(R.id.detail_humidity_textview);
         mWindView = (TextView) rootView.findViewById(R.id.detail_wind_textview);
         mPressureView = (TextView) rootView.findViewById(R.id.detail_pressure_textview);
+
+        // If the forecast list already loaded this day, show it now rather than after a round
+        // trip to the provider; the loader catches up in onLoadFinished.
+        DayDetail prefetched = DayDetail.getPrefetched(mUri);
+        if (prefetched != null) {
+            bindDetail(prefetched);
+        }
         return rootView;
     }
 
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (mUri != null) {
+            outState.putParcelable(DETAIL_URI, mUri);
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        mHandler.removeCallbacks(mRestartLoader);
+        if (mFadeAnimator != null) {
+            mFadeAnimator.end();
+        }
+        mShownDetail = null;
+        super.onDestroyView();
+    }
+
     @Override
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         // Inflate the menu; this adds items to the action bar if it is present.
@@ -149,6 +204,31 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         super.onActivityCreated(savedInstanceState);
     }
 
+    /**
+     * Switches the pane to another day without replacing the fragment.  A prefetched day is
+     * shown at once; the loader is restarted only once selections settle, and whatever it was
+     * still loading for the previous day is cancelled.
+     */
+    void showUri(Uri uri) {
+        if (uri.equals(mUri)) {
+            return;
+        }
+        mUri = uri;
+
+        Loader<Cursor> loader = getLoaderManager().getLoader(DETAIL_LOADER);
+        if (loader != null) {
+            loader.cancelLoad();
+        }
+
+        DayDetail prefetched = DayDetail.getPrefetched(uri);
+        if (prefetched != null) {
+            crossFadeTo(prefetched);
+        }
+
+        mHandler.removeCallbacks(mRestartLoader);
+        mHandler.postDelayed(mRestartLoader, SELECTION_DEBOUNCE_MILLIS);
+    }
+
     void onLocationChanged( String newLocation ) {
         // replace the uri, since the location has changed
         Uri uri = mUri;
@@ -180,58 +260,110 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         if (data != null && data.moveToFirst()) {
-            // Read weather condition ID from cursor
-            int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
-
-            // Use weather art image
-            mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
-
-            // Read date from cursor and update views for day of week and date
-            long date = data.getLong(COL_WEATHER_DATE);
-            String friendlyDateText = Utility.getDayName(getActivity(), date);
-            String dateText = Utility.getFormattedMonthDay(getActivity(), date);
-            mFriendlyDateView.setText(friendlyDateText);
-            mDateView.setText(dateText);
-
-            // Read description from cursor and update view
-            String description = data.getString(COL_WEATHER_DESC);
-            mDescriptionView.setText(description);
+            // A reload for a day we've since moved away from (the data changed while the
+            // restart was debounced) has nothing to show.
+            if (mUri == null
+                    || data.getLong(COL_WEATHER_DATE) != WeatherEntry.getDateFromUri(mUri)) {
+                return;
+            }
+            DayDetail detail = new DayDetail(getActivity(),
+                    data.getLong(COL_WEATHER_DATE),
+                    data.getInt(COL_WEATHER_CONDITION_ID),
+                    data.getString(COL_WEATHER_DESC),
+                    data.getDouble(COL_WEATHER_MAX_TEMP),
+                    data.getDouble(COL_WEATHER_MIN_TEMP),
+                    data.getFloat(COL_WEATHER_HUMIDITY),
+                    data.getFloat(COL_WEATHER_WIND_SPEED),
+                    data.getFloat(COL_WEATHER_DEGREES),
+                    data.getFloat(COL_WEATHER_PRESSURE));
+            // Usually the prefetched detail is already on screen and this is the same thing.
+            if (detail.equals(mShownDetail)) {
+                return;
+            }
+            if (mShownDetail != null && mShownDetail.date != detail.date) {
+                crossFadeTo(detail);
+            } else {
+                bindDetail(detail);
+            }
+        }
+    }
 
-            // For accessibility, add a content description to the icon field
-            mIconView.setContentDescription(description);
+    /*
+        Cross-fades from the day on screen to another one with the same views: the old content
+        is drawn into a bitmap that sits in the view's overlay and fades out while the new
+        content is bound underneath it.
+     */
+    private void crossFadeTo(DayDetail detail) {
+        final View content = getView();
+        if (content == null || mShownDetail == null
+                || content.getWidth() == 0 || content.getHeight() == 0) {
+            bindDetail(detail);
+            return;
+        }
+        if (mFadeAnimator != null) {
+            // Ending it takes the previous picture out of the overlay.
+            mFadeAnimator.end();
+        }
 
-            // Read high temperature from cursor and update view
-            boolean isMetric = Utility.isMetric(getActivity());
+        int width = content.getWidth();
+        int height = content.getHeight();
+        if (mFadeBitmap == null
+                || mFadeBitmap.getWidth() != width || mFadeBitmap.getHeight() != height) {
+            mFadeBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mFadeCanvas = new Canvas(mFadeBitmap);
+        }
+        mFadeBitmap.eraseColor(Color.TRANSPARENT);
+        mFadeCanvas.save();
+        mFadeCanvas.translate(-content.getScrollX(), -content.getScrollY());
+        content.draw(mFadeCanvas);
+        mFadeCanvas.restore();
+
+        final BitmapDrawable previous = new BitmapDrawable(getResources(), mFadeBitmap);
+        previous.setBounds(content.getScrollX(), content.getScrollY(),
+                content.getScrollX() + width, content.getScrollY() + height);
+        content.getOverlay().add(previous);
+
+        bindDetail(detail);
+
+        mFadeAnimator = ObjectAnimator.ofInt(previous, "alpha", 255, 0);
+        mFadeAnimator.setDuration(
+                getResources().getInteger(android.R.integer.config_shortAnimTime));
+        mFadeAnimator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                content.getOverlay().remove(previous);
+                mFadeAnimator = null;
+            }
+        });
+        mFadeAnimator.start();
+    }
 
-            double high = data.getDouble(COL_WEATHER_MAX_TEMP);
-            String highString = Utility.formatTemperature(getActivity(), high);
-            mHighTempView.setText(highString);
+    private void bindDetail(DayDetail detail) {
+        mShownDetail = detail;
 
-            // Read low temperature from cursor and update view
-            double low = data.getDouble(COL_WEATHER_MIN_TEMP);
-            String lowString = Utility.formatTemperature(getActivity(), low);
-            mLowTempView.setText(lowString);
+        // Use weather art image
+        mIconView.setImageBitmap(WeatherArtCache.getInstance(getActivity())
+                .getArt(detail.weatherId, WeatherArtCache.NATURAL_SIZE));
 
-            // Read humidity from cursor and update view
-            float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
-            mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
+        mFriendlyDateView.setText(detail.dayName);
+        mDateView.setText(detail.monthDay);
+        mDescriptionView.setText(detail.description);
 
-            // Read wind speed and direction from cursor and update view
-            float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
-            float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
-            mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
+        // For accessibility, add a content description to the icon field
+        mIconView.setContentDescription(detail.description);
 
-            // Read pressure from cursor and update view
-            float pressure = data.getFloat(COL_WEATHER_PRESSURE);
-            mPressureView.setText(getActivity().getString(R.string.format_pressure, pressure));
+        mHighTempView.setText(detail.highText);
+        mLowTempView.setText(detail.lowText);
+        mHumidityView.setText(detail.humidityText);
+        mWindView.setText(detail.windText);
+        mPressureView.setText(detail.pressureText);
 
-            // We still need this for the share intent
-            mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
+        // We still need this for the share intent
+        mForecast = detail.shareText;
 
-            // If onCreateOptionsMenu has already happened, we need to update the share intent now.
-            if (mShareActionProvider != null) {
-                mShareActionProvider.setShareIntent(createShareForecastIntent());
-            }
+        // If onCreateOptionsMenu has already happened, we need to update the share intent now.
+        if (mShareActionProvider != null) {
+            mShareActionProvider.setShareIntent(createShareForecastIntent());
         }
     }
 
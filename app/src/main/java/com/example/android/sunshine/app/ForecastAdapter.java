@@ -17,7 +17,7 @@ package com.example.android.sunshine.app;
 
 import android.content.Context;
 import android.database.Cursor;
-import android.support.v4.widget.CursorAdapter;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -26,21 +26,39 @@ import android.widget.TextView;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link Cursor} to a {@link android.widget.ListView}.
+ * from a {@link ForecastCursor} to a {@link RecyclerView}.
  */
-public class ForecastAdapter extends CursorAdapter {
+public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ViewHolder> {
 
-    private static final int VIEW_TYPE_COUNT = 2;
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
 
+    public static final long NO_DATE = -1;
+
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
+    private ForecastCursor mCursor;
+    private ForecastCursor.Row[] mRows;
+    // The selection follows its day, not its position, since rows move when days are pruned
+    // or added.  mSelectedPosition is where that day is in mRows, looked up after each swap.
+    private long mSelectedDate = NO_DATE;
+    private int mSelectedPosition = RecyclerView.NO_POSITION;
+
+    private final OnClickHandler mClickHandler;
+    private final WeatherArtCache mArtCache;
+
+    /**
+     * Receives clicks on a forecast day.
+     */
+    public interface OnClickHandler {
+        void onClick(long date, int position);
+    }
+
     /**
      * Cache of the children views for a forecast list item.
      */
-    public static class ViewHolder {
+    public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
         public final ImageView iconView;
         public final TextView dateView;
         public final TextView descriptionView;
@@ -48,22 +66,37 @@ public class ForecastAdapter extends CursorAdapter {
         public final TextView lowTempView;
 
         public ViewHolder(View view) {
+            super(view);
             iconView = (ImageView) view.findViewById(R.id.list_item_icon);
             dateView = (TextView) view.findViewById(R.id.list_item_date_textview);
             descriptionView = (TextView) view.findViewById(R.id.list_item_forecast_textview);
             highTempView = (TextView) view.findViewById(R.id.list_item_high_textview);
             lowTempView = (TextView) view.findViewById(R.id.list_item_low_textview);
+            view.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View v) {
+            int position = getPosition();
+            if (position == RecyclerView.NO_POSITION || mRows == null) {
+                return;
+            }
+            if (!mUseTodayLayout) {
+                setSelectedPosition(position);
+            }
+            mClickHandler.onClick(mRows[position].date, position);
         }
     }
 
-    public ForecastAdapter(Context context, Cursor c, int flags) {
-        super(context, c, flags);
+    public ForecastAdapter(Context context, OnClickHandler clickHandler) {
+        mClickHandler = clickHandler;
+        mArtCache = WeatherArtCache.getInstance(context);
+        setHasStableIds(true);
     }
 
     @Override
-    public View newView(Context context, Cursor cursor, ViewGroup parent) {
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         // Choose the layout type
-        int viewType = getItemViewType(cursor.getPosition());
         int layoutId = -1;
         switch (viewType) {
             case VIEW_TYPE_TODAY: {
@@ -76,58 +109,131 @@ public class ForecastAdapter extends CursorAdapter {
             }
         }
 
-        View view = LayoutInflater.from(context).inflate(layoutId, parent, false);
-
-        ViewHolder viewHolder = new ViewHolder(view);
-        view.setTag(viewHolder);
-
-        return view;
+        View view = LayoutInflater.from(parent.getContext()).inflate(layoutId, parent, false);
+        return new ViewHolder(view);
     }
 
     @Override
-    public void bindView(View view, Context context, Cursor cursor) {
+    public void onBindViewHolder(ViewHolder viewHolder, int position) {
+        // Everything shown here was formatted by ForecastLoader off the main thread.
+        ForecastCursor.Row row = mRows[position];
 
-        ViewHolder viewHolder = (ViewHolder) view.getTag();
-
-        int viewType = getItemViewType(cursor.getPosition());
-        switch (viewType) {
+        switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY: {
-                // Get weather icon
-                viewHolder.iconView.setImageResource(Utility.getArtResourceForWeatherCondition(
-                        cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID)));
+                viewHolder.iconView.setImageBitmap(
+                        mArtCache.getBitmap(row.artResourceId, WeatherArtCache.NATURAL_SIZE));
                 break;
             }
             case VIEW_TYPE_FUTURE_DAY: {
-                // Get weather icon
-                viewHolder.iconView.setImageResource(Utility.getIconResourceForWeatherCondition(
-                        cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID)));
+                viewHolder.iconView.setImageBitmap(
+                        mArtCache.getBitmap(row.iconResourceId, WeatherArtCache.NATURAL_SIZE));
                 break;
             }
         }
 
-        // Read date from cursor
-        long dateInMillis = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-        // Find TextView and set formatted date on it
-        viewHolder.dateView.setText(Utility.getFriendlyDayString(context, dateInMillis));
+        viewHolder.dateView.setText(row.dateText);
+        viewHolder.descriptionView.setText(row.description);
+        // For accessibility, add a content description to the icon field
+        viewHolder.iconView.setContentDescription(row.description);
+        viewHolder.highTempView.setText(row.highText);
+        viewHolder.lowTempView.setText(row.lowText);
 
-        // Read weather forecast from cursor
-        String description = cursor.getString(ForecastFragment.COL_WEATHER_DESC);
-        // Find TextView and set weather forecast on it
-        viewHolder.descriptionView.setText(description);
+        // In two-pane mode the day shown in the detail pane stays highlighted.
+        viewHolder.itemView.setActivated(position == mSelectedPosition);
+    }
 
-        // For accessibility, add a content description to the icon field
-        viewHolder.iconView.setContentDescription(description);
+    /**
+     * Shows rows read from the {@link ForecastSnapshotFile} until the first cursor arrives.
+     */
+    public void showSnapshot(ForecastCursor.Row[] rows) {
+        mCursor = null;
+        mRows = rows;
+        mSelectedPosition = getPositionForDate(mSelectedDate);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Switches to a new forecast list.  If the loader diffed it against the list shown now,
+     * only the days that were removed, inserted or changed are notified; the rest keep their
+     * views as they are.
+     */
+    public void swapCursor(Cursor cursor) {
+        ForecastCursor.Row[] oldRows = mRows;
+        boolean wasSnapshot = mCursor == null && oldRows != null;
+        mCursor = (ForecastCursor) cursor;
+        mRows = mCursor != null ? mCursor.getRows() : null;
+        // The notifications below move the selected view along with its day; binds from
+        // here on need to find it at its new position.
+        mSelectedPosition = getPositionForDate(mSelectedDate);
+
+        ForecastDiff diff = null;
+        if (mCursor != null) {
+            // The loader never saw the snapshot, so diff against it here.  It's a week or two
+            // of rows, and usually nothing has changed.
+            diff = wasSnapshot ? ForecastDiff.compute(oldRows, mRows)
+                    : mCursor.getDiffFrom(oldRows);
+        }
+        if (diff == null) {
+            notifyDataSetChanged();
+            return;
+        }
+        diff.dispatchTo(this);
+        // A new first day changes which row gets the today layout.
+        if (mUseTodayLayout && mRows.length > 0 && oldRows.length > 0
+                && mRows[0].date != oldRows[0].date) {
+            notifyItemChanged(0);
+        }
+    }
 
-        // Read user preference for metric or imperial temperature units
-        boolean isMetric = Utility.isMetric(context);
+    public Cursor getCursor() {
+        return mCursor;
+    }
 
-        // Read high temperature from cursor
-        double high = cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        viewHolder.highTempView.setText(Utility.formatTemperature(context, high));
+    public int getSelectedPosition() {
+        return mSelectedPosition;
+    }
 
-        // Read low temperature from cursor
-        double low = cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        viewHolder.lowTempView.setText(Utility.formatTemperature(context, low));
+    public long getSelectedDate() {
+        return mSelectedDate;
+    }
+
+    public void setSelectedPosition(int position) {
+        setSelectedDate(position != RecyclerView.NO_POSITION ? mRows[position].date : NO_DATE);
+    }
+
+    /**
+     * Highlights the row for the given day, and keeps highlighting it wherever later lists put
+     * it.  Pass {@link #NO_DATE} to clear the selection.
+     */
+    public void setSelectedDate(long date) {
+        if (date == mSelectedDate) {
+            return;
+        }
+        int previous = mSelectedPosition;
+        int position = getPositionForDate(date);
+        mSelectedDate = date;
+        mSelectedPosition = position;
+        if (previous != RecyclerView.NO_POSITION) {
+            notifyItemChanged(previous);
+        }
+        if (position != RecyclerView.NO_POSITION) {
+            notifyItemChanged(position);
+        }
+    }
+
+    /**
+     * @return the position of the row for the given day, or NO_POSITION if it isn't shown
+     */
+    public int getPositionForDate(long date) {
+        if (mRows == null || date == NO_DATE) {
+            return RecyclerView.NO_POSITION;
+        }
+        for (int i = 0; i < mRows.length; i++) {
+            if (mRows[i].date == date) {
+                return i;
+            }
+        }
+        return RecyclerView.NO_POSITION;
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
@@ -140,7 +246,12 @@ public class ForecastAdapter extends CursorAdapter {
     }
 
     @Override
-    public int getViewTypeCount() {
-        return VIEW_TYPE_COUNT;
+    public long getItemId(int position) {
+        return mRows[position].date;
+    }
+
+    @Override
+    public int getItemCount() {
+        return mRows != null ? mRows.length : 0;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.text.format.Time;
+import android.util.LongSparseArray;
+
+import java.util.Locale;
+
+/**
+ * A forecast {@link Cursor} that carries a ready-to-bind {@link Row} for each of its rows, so
+ * {@link ForecastAdapter} never formats anything while the list scrolls.  When the loader
+ * already delivered a list, the cursor also carries the {@link ForecastDiff} from that list.
+ *
+ * The rows depend on the unit preference, the locale and which day is "today", on top of the
+ * data itself.  {@link #isStale(Context)} tells the fragment when one of those has moved on and
+ * the loader has to run again.
+ */
+public class ForecastCursor extends CursorWrapper {
+
+    /**
+     * Display strings and resource ids for one forecast day.
+     */
+    public static class Row {
+        public final long date;
+        public final int weatherId;
+        public final String dateText;
+        public final String description;
+        public final String highText;
+        public final String lowText;
+        public final int iconResourceId;
+        public final int artResourceId;
+
+        Row(Context context, Cursor cursor, boolean isMetric) {
+            this(cursor.getLong(ForecastFragment.COL_WEATHER_DATE),
+                    cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID),
+                    Utility.getFriendlyDayString(context,
+                            cursor.getLong(ForecastFragment.COL_WEATHER_DATE)),
+                    cursor.getString(ForecastFragment.COL_WEATHER_DESC),
+                    Utility.formatTemperature(context,
+                            cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP), isMetric),
+                    Utility.formatTemperature(context,
+                            cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP), isMetric));
+        }
+
+        /**
+         * For rows that were formatted earlier, e.g. read back from {@link ForecastSnapshotFile}.
+         */
+        Row(long date, int weatherId, String dateText, String description, String highText,
+            String lowText) {
+            this.date = date;
+            this.weatherId = weatherId;
+            this.dateText = dateText;
+            this.description = description;
+            this.highText = highText;
+            this.lowText = lowText;
+            iconResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
+            artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        }
+
+        /**
+         * @return true if binding either row would put the same things on screen
+         */
+        boolean sameContentAs(Row other) {
+            return date == other.date
+                    && iconResourceId == other.iconResourceId
+                    && artResourceId == other.artResourceId
+                    && dateText.equals(other.dateText)
+                    && highText.equals(other.highText)
+                    && lowText.equals(other.lowText)
+                    && (description == null
+                            ? other.description == null : description.equals(other.description));
+        }
+    }
+
+    private final Row[] mRows;
+    private final LongSparseArray<DayDetail> mDayDetails;
+    private final String mLocation;
+    private final Locale mLocale;
+    private final boolean mIsMetric;
+    private final int mJulianDay;
+
+    // What the rows changed from the last list the loader delivered, if there was one.
+    private Row[] mDiffBase;
+    private ForecastDiff mDiff;
+
+    /**
+     * Builds the display rows and the {@link DayDetail} for every row of the cursor.  This
+     * reads and formats the whole cursor, so call it off the main thread.
+     */
+    ForecastCursor(Context context, Cursor cursor) {
+        super(cursor);
+        mLocale = Locale.getDefault();
+        mIsMetric = Utility.isMetric(context);
+        mJulianDay = currentJulianDay();
+
+        mRows = new Row[cursor.getCount()];
+        mDayDetails = new LongSparseArray<DayDetail>(mRows.length);
+        String location = null;
+        for (int i = 0; i < mRows.length; i++) {
+            cursor.moveToPosition(i);
+            mRows[i] = new Row(context, cursor, mIsMetric);
+            mDayDetails.append(mRows[i].date, createDayDetail(context, cursor));
+            location = cursor.getString(ForecastFragment.COL_LOCATION_SETTING);
+        }
+        cursor.moveToPosition(-1);
+        mLocation = location;
+    }
+
+    private static DayDetail createDayDetail(Context context, Cursor cursor) {
+        return new DayDetail(context,
+                cursor.getLong(ForecastFragment.COL_WEATHER_DATE),
+                cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID),
+                cursor.getString(ForecastFragment.COL_WEATHER_DESC),
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP),
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP),
+                cursor.getFloat(ForecastFragment.COL_WEATHER_HUMIDITY),
+                cursor.getFloat(ForecastFragment.COL_WEATHER_WIND_SPEED),
+                cursor.getFloat(ForecastFragment.COL_WEATHER_DEGREES),
+                cursor.getFloat(ForecastFragment.COL_WEATHER_PRESSURE));
+    }
+
+    /**
+     * @return the display row at the given position, without moving the cursor
+     */
+    public Row getRow(int position) {
+        return mRows[position];
+    }
+
+    Row[] getRows() {
+        return mRows;
+    }
+
+    LongSparseArray<DayDetail> getDayDetails() {
+        return mDayDetails;
+    }
+
+    /**
+     * @return the location setting the rows are for, or null if there are none
+     */
+    String getLocation() {
+        return mLocation;
+    }
+
+    boolean isMetric() {
+        return mIsMetric;
+    }
+
+    Locale getLocale() {
+        return mLocale;
+    }
+
+    int getJulianDay() {
+        return mJulianDay;
+    }
+
+    void setDiff(Row[] base, ForecastDiff diff) {
+        mDiffBase = base;
+        mDiff = diff;
+    }
+
+    /**
+     * @return the changes from {@code rows} to this cursor, or null if they weren't computed
+     * against that list
+     */
+    ForecastDiff getDiffFrom(Row[] rows) {
+        return rows != null && rows == mDiffBase ? mDiff : null;
+    }
+
+    /**
+     * @return true if the rows were built for a different unit, locale or day than now
+     */
+    public boolean isStale(Context context) {
+        return mIsMetric != Utility.isMetric(context)
+                || !mLocale.equals(Locale.getDefault())
+                || mJulianDay != currentJulianDay();
+    }
+
+    static int currentJulianDay() {
+        Time time = new Time();
+        time.setToNow();
+        return Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.Arrays;
+
+/**
+ * The item-level difference between two forecast lists, as a sequence of RecyclerView range
+ * notifications.
+ *
+ * Both lists are sorted by date and hold at most one row per date, so a single merge pass
+ * finds every removed, inserted and changed day.  Days whose display row is unchanged produce
+ * no notification and are never rebound.
+ */
+class ForecastDiff {
+
+    private static final int OP_REMOVE = 0;
+    private static final int OP_INSERT = 1;
+    private static final int OP_CHANGE = 2;
+
+    // Packed (op, position, count) triples, in the order they have to be dispatched.
+    private int[] mOps = new int[12];
+    private int mOpCount;
+
+    private ForecastDiff() {
+    }
+
+    /**
+     * Compares two snapshots of the list.  Pure computation over immutable rows, so it is safe
+     * to call on the loader thread.
+     */
+    static ForecastDiff compute(ForecastCursor.Row[] oldRows, ForecastCursor.Row[] newRows) {
+        ForecastDiff diff = new ForecastDiff();
+        int i = 0;
+        int j = 0;
+        // position of the next item in the list as it looks after the ops added so far
+        int position = 0;
+        while (i < oldRows.length || j < newRows.length) {
+            if (j == newRows.length || (i < oldRows.length && oldRows[i].date < newRows[j].date)) {
+                diff.add(OP_REMOVE, position);
+                i++;
+            } else if (i == oldRows.length || newRows[j].date < oldRows[i].date) {
+                diff.add(OP_INSERT, position);
+                position++;
+                j++;
+            } else {
+                if (!oldRows[i].sameContentAs(newRows[j])) {
+                    diff.add(OP_CHANGE, position);
+                }
+                position++;
+                i++;
+                j++;
+            }
+        }
+        return diff;
+    }
+
+    private void add(int op, int position) {
+        if (mOpCount > 0) {
+            int last = (mOpCount - 1) * 3;
+            int lastOp = mOps[last];
+            int lastPosition = mOps[last + 1];
+            int lastCount = mOps[last + 2];
+            // Removes at the same position and inserts or changes at the next one extend the
+            // previous range.
+            if (op == lastOp && (op == OP_REMOVE
+                    ? position == lastPosition
+                    : position == lastPosition + lastCount)) {
+                mOps[last + 2]++;
+                return;
+            }
+        }
+        if ((mOpCount + 1) * 3 > mOps.length) {
+            mOps = Arrays.copyOf(mOps, mOps.length * 2);
+        }
+        int next = mOpCount * 3;
+        mOps[next] = op;
+        mOps[next + 1] = position;
+        mOps[next + 2] = 1;
+        mOpCount++;
+    }
+
+    /**
+     * @return true if the two snapshots display identically
+     */
+    boolean isEmpty() {
+        return mOpCount == 0;
+    }
+
+    void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int i = 0; i < mOpCount; i++) {
+            int position = mOps[i * 3 + 1];
+            int count = mOps[i * 3 + 2];
+            switch (mOps[i * 3]) {
+                case OP_REMOVE:
+                    adapter.notifyItemRangeRemoved(position, count);
+                    break;
+                case OP_INSERT:
+                    adapter.notifyItemRangeInserted(position, count);
+                    break;
+                case OP_CHANGE:
+                    adapter.notifyItemRangeChanged(position, count);
+                    break;
+            }
+        }
+    }
+}
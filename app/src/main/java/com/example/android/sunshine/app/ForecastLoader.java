@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+/**
+ * A {@link CursorLoader} that delivers a {@link ForecastCursor}, so the display rows are built
+ * on the loader's background thread together with the query.  The diff against the previously
+ * delivered list is computed there too, leaving the main thread only the notifications.
+ */
+public class ForecastLoader extends CursorLoader {
+
+    // Rows of the last cursor handed to the callbacks.  Written on the main thread, read by
+    // the next load.
+    private volatile ForecastCursor.Row[] mDeliveredRows;
+
+    public ForecastLoader(Context context, Uri uri, String[] projection, String selection,
+                          String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            ForecastCursor forecast = new ForecastCursor(getContext(), cursor);
+            ForecastCursor.Row[] rows = forecast.getRows();
+            if (forecast.getLocation() != null) {
+                DayDetail.publish(forecast.getLocation(), forecast.getDayDetails());
+            }
+
+            // Decode the images here too, so binding finds them in the cache.  Only the first
+            // row can use the today layout and its art.
+            WeatherArtCache artCache = WeatherArtCache.getInstance(getContext());
+            for (int i = 0; i < rows.length; i++) {
+                artCache.getBitmap(rows[i].iconResourceId, WeatherArtCache.NATURAL_SIZE);
+                if (i == 0) {
+                    artCache.getBitmap(rows[i].artResourceId, WeatherArtCache.NATURAL_SIZE);
+                }
+            }
+
+            ForecastCursor.Row[] base = mDeliveredRows;
+            ForecastDiff diff = null;
+            if (base != null) {
+                diff = ForecastDiff.compute(base, rows);
+                forecast.setDiff(base, diff);
+            }
+            // Keep the cold-start snapshot in step with what the list shows.
+            if (diff == null || !diff.isEmpty()) {
+                ForecastSnapshotFile.write(getContext(), forecast);
+            }
+            return forecast;
+        } catch (RuntimeException ex) {
+            cursor.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (!isReset()) {
+            mDeliveredRows = cursor instanceof ForecastCursor
+                    ? ((ForecastCursor) cursor).getRows() : null;
+        }
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        mDeliveredRows = null;
+    }
+}
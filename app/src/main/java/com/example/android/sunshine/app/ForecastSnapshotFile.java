@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Trace;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * The forecast list as it was last rendered, kept in a small file so a cold start can draw it
+ * in the first frame, before the database is even opened.
+ *
+ * The file holds the display strings themselves along with what they were formatted for
+ * (location, units, locale and day).  It is only used when all of those still hold, and the
+ * forecast loader replaces it with live rows as soon as it finishes.  It is rewritten whenever
+ * the loaded list changes and after every sync.
+ */
+public class ForecastSnapshotFile {
+
+    private static final String LOG_TAG = ForecastSnapshotFile.class.getSimpleName();
+
+    private static final String FILE_NAME = "forecast_snapshot";
+    private static final int MAGIC = 0x53554e46; // "SUNF"
+    private static final int VERSION = 1;
+
+    // Guards against a sync and the loader writing at the same time.
+    private static final Object sWriteLock = new Object();
+
+    private ForecastSnapshotFile() {
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Writes the cursor's display rows.  Does file I/O, so call it off the main thread.
+     */
+    static void write(Context context, ForecastCursor forecast) {
+        if (forecast.getLocation() == null) {
+            // Nothing to show yet; keep whatever snapshot there is.
+            return;
+        }
+        synchronized (sWriteLock) {
+            File file = getFile(context);
+            File temp = new File(file.getPath() + ".tmp");
+            try {
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(temp)));
+                try {
+                    out.writeInt(MAGIC);
+                    out.writeShort(VERSION);
+                    writeString(out, forecast.getLocation());
+                    out.writeBoolean(forecast.isMetric());
+                    writeString(out, forecast.getLocale().toString());
+                    out.writeInt(forecast.getJulianDay());
+
+                    ForecastCursor.Row[] rows = forecast.getRows();
+                    out.writeInt(rows.length);
+                    for (ForecastCursor.Row row : rows) {
+                        out.writeLong(row.date);
+                        out.writeInt(row.weatherId);
+                        writeString(out, row.dateText);
+                        writeString(out, row.description);
+                        writeString(out, row.highText);
+                        writeString(out, row.lowText);
+                    }
+                } finally {
+                    out.close();
+                }
+                // Readers only ever see a complete file.
+                if (!temp.renameTo(file)) {
+                    Log.w(LOG_TAG, "Couldn't replace the forecast snapshot");
+                }
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Couldn't write the forecast snapshot", e);
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the snapshot from the provider, for when the data changed without the list
+     * loading it (a sync with the app in the background).
+     */
+    public static void writeFromProvider(Context context) {
+        Cursor cursor = context.getContentResolver().query(
+                ForecastFragment.buildForecastUri(Utility.getPreferredLocation(context)),
+                ForecastFragment.FORECAST_COLUMNS, null, null,
+                ForecastFragment.FORECAST_SORT_ORDER);
+        if (cursor == null) {
+            return;
+        }
+        ForecastCursor forecast = new ForecastCursor(context, cursor);
+        try {
+            write(context, forecast);
+        } finally {
+            forecast.close();
+        }
+    }
+
+    /**
+     * Reads the snapshot if it was made for the current location, units, locale and day.  The
+     * file is a few hundred bytes and memory mapped, so this is cheap enough for the main
+     * thread during startup.
+     *
+     * @return the rows to show, or null if there is no usable snapshot
+     */
+    static ForecastCursor.Row[] readIfCurrent(Context context) {
+        File file = getFile(context);
+        if (!file.exists()) {
+            return null;
+        }
+        Trace.beginSection("ForecastSnapshotFile.read");
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                FileChannel channel = in.getChannel();
+                MappedByteBuffer buffer =
+                        channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                    return null;
+                }
+
+                SunshineSettings settings = SunshineSettings.get(context);
+                if (!settings.location.equals(readString(buffer))
+                        || settings.isMetric != (buffer.get() != 0)
+                        || !Locale.getDefault().toString().equals(readString(buffer))
+                        || ForecastCursor.currentJulianDay() != buffer.getInt()) {
+                    return null;
+                }
+
+                ForecastCursor.Row[] rows = new ForecastCursor.Row[buffer.getInt()];
+                for (int i = 0; i < rows.length; i++) {
+                    long date = buffer.getLong();
+                    int weatherId = buffer.getInt();
+                    String dateText = readString(buffer);
+                    String description = readString(buffer);
+                    String highText = readString(buffer);
+                    String lowText = readString(buffer);
+                    rows[i] = new ForecastCursor.Row(date, weatherId, dateText, description,
+                            highText, lowText);
+                }
+                return rows;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't read the forecast snapshot", e);
+            return null;
+        } catch (RuntimeException e) {
+            // A truncated or garbled file; the loader will write a good one.
+            Log.w(LOG_TAG, "Ignoring corrupt forecast snapshot", e);
+            return null;
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.text.format.Time;
+import android.util.SparseArray;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats forecast dates for display, the way {@link Utility#getFriendlyDayString},
+ * {@link Utility#getDayName} and {@link Utility#getFormattedMonthDay} describe.
+ *
+ * The formatters are built once per locale and time zone, and every result is memoized by
+ * julian day, so formatting a day the list has shown before is a lookup.  Everything is thrown
+ * away when the locale changes, the time zone or clock changes, or the current day ends, since
+ * "Today" and "Tomorrow" depend on it.
+ */
+public class FriendlyDateFormatter {
+
+    // Forecasts are a couple of weeks; this only bounds the memo if something walks history.
+    private static final int MAX_MEMOIZED_DAYS = 64;
+
+    private static FriendlyDateFormatter sInstance;
+
+    private final Context mContext;
+
+    private Locale mLocale;
+    private TimeZone mTimeZone;
+    private long mDayStartMillis;
+    private long mDayEndMillis;
+    private int mCurrentJulianDay;
+
+    private String mToday;
+    private String mTomorrow;
+    private String mFullFriendlyFormat;
+    private SimpleDateFormat mShortenedDateFormat;
+    private SimpleDateFormat mDayFormat;
+    private SimpleDateFormat mMonthDayFormat;
+
+    private final SparseArray<String> mFriendlyDays = new SparseArray<String>();
+    private final SparseArray<String> mDayNames = new SparseArray<String>();
+    private final SparseArray<String> mMonthDays = new SparseArray<String>();
+
+    private final BroadcastReceiver mInvalidator = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate();
+        }
+    };
+
+    public static synchronized FriendlyDateFormatter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new FriendlyDateFormatter(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private FriendlyDateFormatter(Context context) {
+        mContext = context;
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_DATE_CHANGED);
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        context.registerReceiver(mInvalidator, filter);
+    }
+
+    /**
+     * Drops the formatters and every memoized string.  The next call rebuilds them for the
+     * current locale, time zone and day.
+     */
+    public synchronized void invalidate() {
+        mLocale = null;
+    }
+
+    /**
+     * @see Utility#getFriendlyDayString
+     */
+    public synchronized String getFriendlyDayString(long dateInMillis) {
+        ensureCurrent();
+        int julianDay = getJulianDay(dateInMillis);
+        String friendly = mFriendlyDays.get(julianDay);
+        if (friendly == null) {
+            if (julianDay == mCurrentJulianDay) {
+                // "Today, June 24"
+                friendly = String.format(mFullFriendlyFormat,
+                        mToday, getFormattedMonthDay(julianDay, dateInMillis));
+            } else if (julianDay < mCurrentJulianDay + 7) {
+                // less than a week in the future, just the day name
+                friendly = getDayName(julianDay, dateInMillis);
+            } else {
+                // "Mon Jun 3"
+                friendly = mShortenedDateFormat.format(dateInMillis);
+            }
+            put(mFriendlyDays, julianDay, friendly);
+        }
+        return friendly;
+    }
+
+    /**
+     * @see Utility#getDayName
+     */
+    public synchronized String getDayName(long dateInMillis) {
+        ensureCurrent();
+        return getDayName(getJulianDay(dateInMillis), dateInMillis);
+    }
+
+    /**
+     * @see Utility#getFormattedMonthDay
+     */
+    public synchronized String getFormattedMonthDay(long dateInMillis) {
+        ensureCurrent();
+        return getFormattedMonthDay(getJulianDay(dateInMillis), dateInMillis);
+    }
+
+    private String getDayName(int julianDay, long dateInMillis) {
+        if (julianDay == mCurrentJulianDay) {
+            return mToday;
+        } else if (julianDay == mCurrentJulianDay + 1) {
+            return mTomorrow;
+        }
+        String dayName = mDayNames.get(julianDay);
+        if (dayName == null) {
+            dayName = mDayFormat.format(dateInMillis);
+            put(mDayNames, julianDay, dayName);
+        }
+        return dayName;
+    }
+
+    private String getFormattedMonthDay(int julianDay, long dateInMillis) {
+        String monthDay = mMonthDays.get(julianDay);
+        if (monthDay == null) {
+            monthDay = mMonthDayFormat.format(dateInMillis);
+            put(mMonthDays, julianDay, monthDay);
+        }
+        return monthDay;
+    }
+
+    private static void put(SparseArray<String> memo, int julianDay, String value) {
+        if (memo.size() >= MAX_MEMOIZED_DAYS) {
+            memo.clear();
+        }
+        memo.put(julianDay, value);
+    }
+
+    private int getJulianDay(long millis) {
+        return Time.getJulianDay(millis, mTimeZone.getOffset(millis) / 1000);
+    }
+
+    /*
+        Rebuilds everything if the locale moved on or the clock has left the day the memoized
+        strings were made for.  Time zone changes come in through the receiver, since reading
+        the default zone allocates a copy each time.
+     */
+    private void ensureCurrent() {
+        long now = System.currentTimeMillis();
+        Locale locale = Locale.getDefault();
+        if (locale.equals(mLocale) && now >= mDayStartMillis && now < mDayEndMillis) {
+            return;
+        }
+
+        mLocale = locale;
+        mTimeZone = TimeZone.getDefault();
+        mCurrentJulianDay = getJulianDay(now);
+
+        Time time = new Time(mTimeZone.getID());
+        time.setJulianDay(mCurrentJulianDay);
+        mDayStartMillis = time.toMillis(true);
+        time.setJulianDay(mCurrentJulianDay + 1);
+        mDayEndMillis = time.toMillis(true);
+
+        mToday = mContext.getString(R.string.today);
+        mTomorrow = mContext.getString(R.string.tomorrow);
+        mFullFriendlyFormat = mContext.getString(R.string.format_full_friendly_date);
+        mShortenedDateFormat = newFormat("EEE MMM dd");
+        mDayFormat = newFormat("EEEE");
+        mMonthDayFormat = newFormat("MMMM dd");
+
+        mFriendlyDays.clear();
+        mDayNames.clear();
+        mMonthDays.clear();
+    }
+
+    private SimpleDateFormat newFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, mLocale);
+        format.setTimeZone(mTimeZone);
+        return format;
+    }
+}
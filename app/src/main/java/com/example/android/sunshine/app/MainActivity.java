@@ -15,27 +15,20 @@
  */
 package com.example.android.sunshine.app;
 
+import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.v7.app.ActionBarActivity;
-import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.wearable.Wearable;
 
-public class MainActivity extends ActionBarActivity implements
-        ForecastFragment.Callback,
-        GoogleApiClient.ConnectionCallbacks,
-        GoogleApiClient.OnConnectionFailedListener {
+public class MainActivity extends ActionBarActivity implements ForecastFragment.Callback {
 
-    private final String LOG_TAG = MainActivity.class.getSimpleName();
     private static final String DETAILFRAGMENT_TAG = "DFTAG";
-    public static GoogleApiClient googleApiClient;
+    private static boolean sStartupScheduled;
 
     private boolean mTwoPane;
     private String mLocation;
@@ -44,12 +37,7 @@ public class MainActivity extends ActionBarActivity implements
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         mLocation = Utility.getPreferredLocation(this);
-
-        googleApiClient = new GoogleApiClient.Builder(this)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .addApi(Wearable.API)
-                .build();
+        scheduleStartupTasks();
 
         setContentView(R.layout.activity_main);
         if (findViewById(R.id.weather_detail_container) != null) {
@@ -73,8 +61,27 @@ public class MainActivity extends ActionBarActivity implements
         ForecastFragment forecastFragment =  ((ForecastFragment)getSupportFragmentManager()
                 .findFragmentById(R.id.fragment_forecast));
         forecastFragment.setUseTodayLayout(!mTwoPane);
+    }
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
+    /*
+        Everything here can wait until after the first frame.  It runs once per process, off the
+        main thread; see StartupScheduler for the timings in the log.
+     */
+    private void scheduleStartupTasks() {
+        if (sStartupScheduled) {
+            return;
+        }
+        sStartupScheduled = true;
+
+        final Context appContext = getApplicationContext();
+        new StartupScheduler()
+                .add(new StartupScheduler.Task("sync-account", StartupScheduler.PRIORITY_NORMAL) {
+                    @Override
+                    public void run() {
+                        SunshineSyncAdapter.initializeSyncAdapter(appContext);
+                    }
+                })
+                .start();
     }
 
     @Override
@@ -100,18 +107,6 @@ public class MainActivity extends ActionBarActivity implements
         return super.onOptionsItemSelected(item);
     }
 
-    @Override
-    protected void onStart() {
-        super.onStart();
-        googleApiClient.connect();
-    }
-
-    @Override
-    protected void onStop() {
-        if(googleApiClient != null && googleApiClient.isConnected()){googleApiClient.disconnect();}
-        super.onStop();
-    }
-
     @Override
     protected void onResume() {
         super.onResume();
@@ -133,7 +128,16 @@ public class MainActivity extends ActionBarActivity implements
     @Override
     public void onItemSelected(Uri contentUri) {
         if (mTwoPane) {
-            // In two-pane mode, show the detail view in this activity by
+            // In two-pane mode the detail pane is already showing a day; point it at the new
+            // one rather than inflating a whole new fragment for every selection.
+            DetailFragment df = (DetailFragment) getSupportFragmentManager()
+                    .findFragmentByTag(DETAILFRAGMENT_TAG);
+            if (df != null && df.isAdded() && df.getView() != null) {
+                df.showUri(contentUri);
+                return;
+            }
+
+            // Otherwise, show the detail view in this activity by
             // adding or replacing the detail fragment using a
             // fragment transaction.
             Bundle args = new Bundle();
@@ -151,20 +155,4 @@ public class MainActivity extends ActionBarActivity implements
             startActivity(intent);
         }
     }
-
-    @Override
-    public void onConnected(Bundle bundle) {
-        Log.d(LOG_TAG, "onConnected");
-    }
-
-    @Override
-    public void onConnectionSuspended(int i) {
-        Log.d(LOG_TAG, "onConnectionSuspended");
-    }
-
-    @Override
-    public void onConnectionFailed(ConnectionResult connectionResult) {
-        Log.d(LOG_TAG, "onConnectionFailed");
-    }
-
 }
@@ -17,7 +17,6 @@ package com.example.android.sunshine.app;
 
 import android.annotation.TargetApi;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.ListPreference;
@@ -37,7 +36,7 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
  * API Guide</a> for more information on developing a Settings UI.
  */
 public class SettingsActivity extends PreferenceActivity
-        implements Preference.OnPreferenceChangeListener, SharedPreferences.OnSharedPreferenceChangeListener {
+        implements Preference.OnPreferenceChangeListener, SunshineSettings.Observer {
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -51,19 +50,19 @@ public class SettingsActivity extends PreferenceActivity
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_units_key)));
     }
 
-    // Registers a shared preference change listener that gets notified when preferences change
+    // Registers a settings observer that gets notified when preferences change
     @Override
     protected void onResume() {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(this);
-        sp.registerOnSharedPreferenceChangeListener(this);
+        // Make sure the snapshot exists, so it's listening before anything can change.
+        SunshineSettings.get(this);
+        SunshineSettings.addObserver(this);
         super.onResume();
     }
 
-    // Unregisters a shared preference change listener
+    // Unregisters the settings observer
     @Override
     protected void onPause() {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(this);
-        sp.unregisterOnSharedPreferenceChangeListener(this);
+        SunshineSettings.removeObserver(this);
         super.onPause();
     }
 
@@ -108,13 +107,13 @@ public class SettingsActivity extends PreferenceActivity
         return true;
     }
 
-    // This gets called after the preference is changed, which is important because we
-    // start our synchronization here
+    // This gets called after the preference is changed and the settings snapshot has been
+    // replaced, which is important because we start our synchronization here
     @Override
-    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
-        if ( key.equals(getString(R.string.pref_location_key)) ) {
+    public void onSettingsChanged(SunshineSettings previous, SunshineSettings current) {
+        if ( !current.location.equals(previous.location) ) {
             SunshineSyncAdapter.syncImmediately(this);
-        } else if ( key.equals(getString(R.string.pref_units_key)) ) {
+        } else if ( current.isMetric != previous.isMetric ) {
             // units have changed. update lists of weather entries accordingly
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
         }
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the work that has to happen at startup but not before the first frame.
+ *
+ * Each {@link Task} is named, has a priority and may name tasks it depends on.  Once
+ * {@link #start()} is called, a task is queued as soon as everything it depends on has
+ * finished, and the queued task with the highest priority runs next on one of a few
+ * background threads.  How long each task waited and ran is logged, along with the total.
+ *
+ * A task that throws is logged and counts as finished, so the tasks after it still run.
+ */
+public class StartupScheduler {
+
+    private static final String LOG_TAG = StartupScheduler.class.getSimpleName();
+
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_LOW = 2;
+
+    // Startup work is mostly waiting on binder calls and disk, so a couple of threads is enough
+    // to overlap it without competing with the main thread for the cores.
+    private static final int THREAD_COUNT = 2;
+
+    /**
+     * One piece of startup work.
+     */
+    public abstract static class Task {
+        final String name;
+        final int priority;
+        final String[] dependencies;
+
+        /**
+         * @param name unique within the scheduler, and what the timings are logged under
+         * @param priority one of the PRIORITY constants; lower runs first
+         * @param dependencies names of tasks that must finish before this one starts
+         */
+        public Task(String name, int priority, String... dependencies) {
+            this.name = name;
+            this.priority = priority;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * Does the work, on a background thread.
+         */
+        public abstract void run();
+    }
+
+    private final Map<String, Node> mNodes = new HashMap<String, Node>();
+    private final List<Node> mOrder = new ArrayList<Node>();
+    private final AtomicInteger mSequence = new AtomicInteger();
+    private CountDownLatch mFinished;
+    private ThreadPoolExecutor mExecutor;
+    private long mStartTime;
+
+    // A task with its place in the graph.  Ordered for the executor's queue by priority, then
+    // by the order the tasks became ready.
+    private final class Node implements Runnable, Comparable<Node> {
+        final Task task;
+        final List<Node> dependents = new ArrayList<Node>();
+        int pendingDependencies;
+        int sequence;
+        long queuedTime;
+
+        Node(Task task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long startTime = SystemClock.elapsedRealtime();
+            Trace.beginSection(task.name);
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Startup task " + task.name + " failed", e);
+            } finally {
+                Trace.endSection();
+            }
+            long endTime = SystemClock.elapsedRealtime();
+            Log.d(LOG_TAG, task.name + ": waited " + (startTime - queuedTime) + "ms, ran "
+                    + (endTime - startTime) + "ms");
+            onFinished(this);
+        }
+
+        @Override
+        public int compareTo(Node other) {
+            if (task.priority != other.task.priority) {
+                return task.priority < other.task.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * Adds a task.  All tasks must be added before {@link #start()}.
+     */
+    public StartupScheduler add(Task task) {
+        if (mExecutor != null) {
+            throw new IllegalStateException("Already started");
+        }
+        if (mNodes.containsKey(task.name)) {
+            throw new IllegalArgumentException("Duplicate task: " + task.name);
+        }
+        Node node = new Node(task);
+        mNodes.put(task.name, node);
+        mOrder.add(node);
+        return this;
+    }
+
+    /**
+     * Starts running the tasks.  Returns straight away.
+     *
+     * @throws IllegalArgumentException if a task depends on one that wasn't added, or the
+     * dependencies form a cycle
+     */
+    public void start() {
+        if (mExecutor != null) {
+            throw new IllegalStateException("Already started");
+        }
+        for (Node node : mOrder) {
+            for (String name : node.task.dependencies) {
+                Node dependency = mNodes.get(name);
+                if (dependency == null) {
+                    throw new IllegalArgumentException(
+                            node.task.name + " depends on unknown task " + name);
+                }
+                dependency.dependents.add(node);
+                node.pendingDependencies++;
+            }
+        }
+        checkForCycles();
+
+        mFinished = new CountDownLatch(mOrder.size());
+        mExecutor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 1, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "startup-" + mCount.incrementAndGet());
+            }
+        });
+        // The threads go away once startup is done.
+        mExecutor.allowCoreThreadTimeOut(true);
+
+        mStartTime = SystemClock.elapsedRealtime();
+        List<Node> ready = new ArrayList<Node>();
+        for (Node node : mOrder) {
+            if (node.pendingDependencies == 0) {
+                ready.add(node);
+            }
+        }
+        synchronized (this) {
+            enqueue(ready);
+        }
+    }
+
+    /**
+     * Blocks until every task has finished.  Never call this on the main thread.
+     *
+     * @return false if the timeout passed first
+     */
+    public boolean awaitCompletion(long timeoutMillis) throws InterruptedException {
+        if (mFinished == null) {
+            throw new IllegalStateException("Not started");
+        }
+        return mFinished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+        Called with the lock held.  While the pool has idle threads the executor hands a task
+        straight to one rather than queueing it, so tasks that become ready together are sorted
+        here first.
+     */
+    private void enqueue(List<Node> ready) {
+        long now = SystemClock.elapsedRealtime();
+        for (Node node : ready) {
+            node.sequence = mSequence.getAndIncrement();
+            node.queuedTime = now;
+        }
+        Collections.sort(ready);
+        for (Node node : ready) {
+            mExecutor.execute(node);
+        }
+    }
+
+    private void onFinished(Node node) {
+        synchronized (this) {
+            List<Node> ready = new ArrayList<Node>();
+            for (Node dependent : node.dependents) {
+                if (--dependent.pendingDependencies == 0) {
+                    ready.add(dependent);
+                }
+            }
+            enqueue(ready);
+        }
+        mFinished.countDown();
+        if (mFinished.getCount() == 0) {
+            Log.d(LOG_TAG, "All " + mOrder.size() + " startup tasks done in "
+                    + (SystemClock.elapsedRealtime() - mStartTime) + "ms");
+        }
+    }
+
+    /*
+        Kahn's algorithm over a copy of the dependency counts: if some tasks never become ready,
+        they're on a cycle and would never run.
+     */
+    private void checkForCycles() {
+        Map<Node, Integer> pending = new HashMap<Node, Integer>();
+        List<Node> ready = new ArrayList<Node>();
+        for (Node node : mOrder) {
+            pending.put(node, node.pendingDependencies);
+            if (node.pendingDependencies == 0) {
+                ready.add(node);
+            }
+        }
+        int visited = 0;
+        while (!ready.isEmpty()) {
+            Node node = ready.remove(ready.size() - 1);
+            visited++;
+            for (Node dependent : node.dependents) {
+                int count = pending.get(dependent) - 1;
+                pending.put(dependent, count);
+                if (count == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (visited != mOrder.size()) {
+            throw new IllegalArgumentException("Startup tasks depend on each other in a cycle");
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An immutable snapshot of the user's settings, shared by the whole process.
+ *
+ * The snapshot is read from SharedPreferences once and replaced as a whole whenever a setting
+ * changes, so {@link #get(Context)} is a single volatile read and never touches preferences or
+ * resources.  Components that need to react to a change register an {@link Observer}.
+ */
+public final class SunshineSettings {
+
+    /**
+     * Notified on the main thread after the snapshot has been replaced.
+     */
+    public interface Observer {
+        void onSettingsChanged(SunshineSettings previous, SunshineSettings current);
+    }
+
+    public final String location;
+    public final boolean isMetric;
+    public final boolean notificationsEnabled;
+
+    private static volatile SunshineSettings sCurrent;
+
+    private static final CopyOnWriteArrayList<Observer> sObservers =
+            new CopyOnWriteArrayList<Observer>();
+
+    // SharedPreferences only keeps weak references to its listeners, so this one is held here
+    // for the life of the process.
+    private static SharedPreferences.OnSharedPreferenceChangeListener sPreferenceListener;
+
+    private SunshineSettings(Context context, SharedPreferences prefs) {
+        location = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        String metric = context.getString(R.string.pref_units_metric);
+        isMetric = prefs.getString(context.getString(R.string.pref_units_key), metric)
+                .equals(metric);
+        notificationsEnabled = prefs.getBoolean(
+                context.getString(R.string.pref_enable_notifications_key),
+                Boolean.parseBoolean(
+                        context.getString(R.string.pref_enable_notifications_default)));
+    }
+
+    /**
+     * @return the current settings
+     */
+    public static SunshineSettings get(Context context) {
+        SunshineSettings current = sCurrent;
+        return current != null ? current : load(context.getApplicationContext());
+    }
+
+    public static void addObserver(Observer observer) {
+        sObservers.addIfAbsent(observer);
+    }
+
+    public static void removeObserver(Observer observer) {
+        sObservers.remove(observer);
+    }
+
+    private static synchronized SunshineSettings load(final Context context) {
+        if (sCurrent == null) {
+            final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+            sPreferenceListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                                                      String key) {
+                    update(context, prefs);
+                }
+            };
+            prefs.registerOnSharedPreferenceChangeListener(sPreferenceListener);
+            sCurrent = new SunshineSettings(context, prefs);
+        }
+        return sCurrent;
+    }
+
+    private static void update(Context context, SharedPreferences prefs) {
+        SunshineSettings previous = sCurrent;
+        SunshineSettings current = new SunshineSettings(context, prefs);
+        // Bookkeeping keys like the last notification time live in the same file; a change
+        // there leaves the settings as they were.
+        if (current.equals(previous)) {
+            return;
+        }
+        sCurrent = current;
+        for (Observer observer : sObservers) {
+            observer.onSettingsChanged(previous, current);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SunshineSettings)) {
+            return false;
+        }
+        SunshineSettings other = (SunshineSettings) o;
+        return isMetric == other.isMetric
+                && notificationsEnabled == other.notificationsEnabled
+                && location.equals(other.location);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = location.hashCode();
+        result = 31 * result + (isMetric ? 1 : 0);
+        result = 31 * result + (notificationsEnabled ? 1 : 0);
+        return result;
+    }
+}
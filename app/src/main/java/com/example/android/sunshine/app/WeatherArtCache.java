@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.LruCache;
+
+/**
+ * A process-wide, memory-bounded cache of decoded weather icons and art.
+ *
+ * Bitmaps are decoded straight at the size they are drawn at, rather than decoded at full
+ * resolution and scaled afterwards, and kept by resource (which is the condition and whether
+ * it's the icon or the art), size and screen density.  The cache registers itself for
+ * {@link ComponentCallbacks2#onTrimMemory} and shrinks or empties when the system asks.
+ */
+public class WeatherArtCache implements ComponentCallbacks2 {
+
+    /** Pass as the size to decode at the drawable's own size for this screen. */
+    public static final int NATURAL_SIZE = 0;
+
+    // The art is a few hundred pixels square, so this fits every condition at two or three
+    // sizes without costing much of the heap.
+    private static final int MAX_CACHE_FRACTION = 16;
+
+    private static WeatherArtCache sInstance;
+
+    private final Resources mResources;
+    private final LruCache<Long, Bitmap> mBitmaps;
+
+    public static synchronized WeatherArtCache getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new WeatherArtCache(appContext);
+            appContext.registerComponentCallbacks(sInstance);
+        }
+        return sInstance;
+    }
+
+    private WeatherArtCache(Context context) {
+        mResources = context.getResources();
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int maxBytes = activityManager.getMemoryClass() * 1024 * 1024 / MAX_CACHE_FRACTION;
+        mBitmaps = new LruCache<Long, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Long key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * @return the art for the weather condition, or null if the code has no art
+     */
+    public Bitmap getArt(int weatherId, int sizePx) {
+        return getBitmap(Utility.getArtResourceForWeatherCondition(weatherId), sizePx);
+    }
+
+    /**
+     * @return the icon for the weather condition, or null if the code has no icon
+     */
+    public Bitmap getIcon(int weatherId, int sizePx) {
+        return getBitmap(Utility.getIconResourceForWeatherCondition(weatherId), sizePx);
+    }
+
+    /**
+     * @param resourceId one of the weather icon or art drawables, or -1
+     * @param sizePx the width and height to decode at, or {@link #NATURAL_SIZE}
+     * @return the decoded bitmap, or null for -1
+     */
+    public Bitmap getBitmap(int resourceId, int sizePx) {
+        if (resourceId == -1) {
+            return null;
+        }
+        int densityDpi = mResources.getDisplayMetrics().densityDpi;
+        Long key = ((long) resourceId << 32) | ((long) (sizePx & 0xffff) << 16) | densityDpi;
+        Bitmap bitmap = mBitmaps.get(key);
+        if (bitmap == null) {
+            // Two threads may decode the same bitmap at once; the second put just wins.
+            bitmap = decode(resourceId, sizePx);
+            if (bitmap != null) {
+                mBitmaps.put(key, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /*
+        Decodes with the largest power of two subsampling that keeps the image at least as big
+        as asked for, and lets the decoder's density scaling take it the rest of the way, so the
+        full-size image is never allocated.
+     */
+    private Bitmap decode(int resourceId, int sizePx) {
+        if (sizePx == NATURAL_SIZE) {
+            return BitmapFactory.decodeResource(mResources, resourceId);
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        options.inScaled = false;
+        BitmapFactory.decodeResource(mResources, resourceId, options);
+        int sourceSize = Math.max(options.outWidth, options.outHeight);
+        if (sourceSize <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (sourceSize / (sampleSize * 2) >= sizePx) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inScaled = true;
+        options.inDensity = sourceSize / sampleSize;
+        options.inTargetDensity = sizePx;
+        return BitmapFactory.decodeResource(mResources, resourceId, options);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            // Everything here can be decoded again; the process staying alive matters more.
+            mBitmaps.evictAll();
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            mBitmaps.trimToSize(mBitmaps.maxSize() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        mBitmaps.evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.os.Trace;
+import android.util.SparseArray;
+
+import java.io.PrintWriter;
+
+/**
+ * Always-on latency bookkeeping for {@link WeatherProvider}, one entry per operation and
+ * UriMatcher code.
+ *
+ * Latencies go into power-of-two microsecond buckets, so recording a call is a handful of
+ * arithmetic and never allocates once an entry exists.  Percentiles are reported as the upper
+ * bound of the bucket they fall in, which is plenty to tell a 200us query from a 20ms one.
+ *
+ * Lock wait is only known for calls that open their own write transaction; the rest pass
+ * {@link #LOCK_WAIT_NOT_MEASURED}, and an entry with no measured calls dumps it as "-".
+ */
+class ProviderStats {
+
+    static final int OP_QUERY = 0;
+    static final int OP_INSERT = 1;
+    static final int OP_BULK_INSERT = 2;
+    static final int OP_UPDATE = 3;
+    static final int OP_DELETE = 4;
+    static final int OP_REPLACE_WINDOW = 5;
+    private static final String[] OP_NAMES =
+            {"query", "insert", "bulkInsert", "update", "delete", "replaceWindow"};
+
+    static final long LOCK_WAIT_NOT_MEASURED = -1;
+
+    // Bucket i holds latencies in [2^(i-1), 2^i) microseconds; the last one is open ended.
+    private static final int BUCKET_COUNT = 32;
+
+    static final class Entry {
+        final String traceSection;
+        final long[] buckets = new long[BUCKET_COUNT];
+        long count;
+        long rows;
+        long totalNanos;
+        long maxNanos;
+        long lockWaitNanos;
+        // Calls whose lock wait was measured.
+        long lockWaitCount;
+
+        Entry(String traceSection) {
+            this.traceSection = traceSection;
+        }
+
+        synchronized void record(long elapsedNanos, long lockWaitNanos, int rows) {
+            buckets[bucketFor(elapsedNanos)]++;
+            count++;
+            this.rows += rows;
+            totalNanos += elapsedNanos;
+            if (lockWaitNanos != LOCK_WAIT_NOT_MEASURED) {
+                this.lockWaitNanos += lockWaitNanos;
+                lockWaitCount++;
+            }
+            if (elapsedNanos > maxNanos) {
+                maxNanos = elapsedNanos;
+            }
+        }
+
+        /**
+         * @return the upper bound, in microseconds, of the bucket holding the given percentile
+         */
+        synchronized long percentileMicros(int percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long threshold = (count * percentile + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += buckets[i];
+                if (seen >= threshold) {
+                    return 1L << i;
+                }
+            }
+            return 1L << (BUCKET_COUNT - 1);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private final SparseArray<Entry>[] mEntries = new SparseArray[OP_NAMES.length];
+
+    ProviderStats() {
+        for (int i = 0; i < mEntries.length; i++) {
+            mEntries[i] = new SparseArray<Entry>();
+        }
+    }
+
+    private static int bucketFor(long elapsedNanos) {
+        long micros = elapsedNanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return bucket < BUCKET_COUNT ? bucket : BUCKET_COUNT - 1;
+    }
+
+    Entry entry(int op, int match) {
+        SparseArray<Entry> entries = mEntries[op];
+        synchronized (entries) {
+            Entry entry = entries.get(match);
+            if (entry == null) {
+                entry = new Entry("WeatherProvider." + OP_NAMES[op] + "/" + match);
+                entries.put(match, entry);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Opens a systrace section for the call and returns the entry to record into when it ends.
+     */
+    Entry begin(int op, int match) {
+        Entry entry = entry(op, match);
+        Trace.beginSection(entry.traceSection);
+        return entry;
+    }
+
+    void end(Entry entry, long startNanos, long lockWaitNanos, int rows) {
+        Trace.endSection();
+        entry.record(System.nanoTime() - startNanos, lockWaitNanos, rows);
+    }
+
+    void dump(PrintWriter writer) {
+        writer.println("WeatherProvider latency (us, bucketed):");
+        writer.println("  op/match           count    rows   mean    p50    p90    p99     max  lockwait");
+        for (int op = 0; op < mEntries.length; op++) {
+            SparseArray<Entry> entries = mEntries[op];
+            synchronized (entries) {
+                for (int i = 0; i < entries.size(); i++) {
+                    Entry entry = entries.valueAt(i);
+                    synchronized (entry) {
+                        if (entry.count == 0) {
+                            continue;
+                        }
+                        writer.println(String.format("  %-16s %7d %7d %6d %6d %6d %6d %7d %9s",
+                                OP_NAMES[op] + "/" + entries.keyAt(i),
+                                entry.count,
+                                entry.rows,
+                                entry.totalNanos / entry.count / 1000,
+                                entry.percentileMicros(50),
+                                entry.percentileMicros(90),
+                                entry.percentileMicros(99),
+                                entry.maxNanos / 1000,
+                                // Mean over the calls whose lock wait was measured.
+                                entry.lockWaitCount == 0 ? "-" : String.valueOf(
+                                        entry.lockWaitNanos / entry.lockWaitCount / 1000)));
+                    }
+                }
+            }
+        }
+    }
+
+    void reset() {
+        for (SparseArray<Entry> entries : mEntries) {
+            synchronized (entries) {
+                entries.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.RollupEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Moves days that have aged out of the forecast window into the history table and folds them
+ * into the monthly and yearly rollups.
+ *
+ * The rollups keep running sums rather than means, so each archived day is a constant amount
+ * of work no matter how many years a location already has, and trend queries read one row per
+ * period instead of scanning history.
+ */
+class WeatherArchive {
+
+    private static final String WEATHER_COLUMNS =
+            WeatherEntry.COLUMN_LOC_KEY + ", " +
+            WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_SHORT_DESC + ", " +
+            WeatherEntry.COLUMN_WEATHER_ID + ", " +
+            WeatherEntry.COLUMN_MIN_TEMP + ", " +
+            WeatherEntry.COLUMN_MAX_TEMP + ", " +
+            WeatherEntry.COLUMN_HUMIDITY + ", " +
+            WeatherEntry.COLUMN_PRESSURE + ", " +
+            WeatherEntry.COLUMN_WIND_SPEED + ", " +
+            WeatherEntry.COLUMN_DEGREES;
+
+    // weather rows up to the prune date that aren't in history yet.  A day that is already
+    // archived (say, it came back through a snapshot import) must not be counted twice.
+    private static final String EXPIRED_SELECTION =
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + " <= ? AND NOT EXISTS (" +
+            "SELECT 1 FROM " + HistoryEntry.TABLE_NAME + " h WHERE " +
+            "h." + WeatherEntry.COLUMN_LOC_KEY + " = " +
+                    WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY + " AND " +
+            "h." + WeatherEntry.COLUMN_DATE + " = " +
+                    WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + ")";
+
+    private static final String SQL_ROLLUP_MONTHLY = buildRollupSql(RollupEntry.TABLE_MONTHLY, "%Y%m");
+    private static final String SQL_ROLLUP_YEARLY = buildRollupSql(RollupEntry.TABLE_YEARLY, "%Y");
+
+    private static final String SQL_ARCHIVE =
+            "INSERT INTO " + HistoryEntry.TABLE_NAME + " (" + WEATHER_COLUMNS + ") " +
+            "SELECT " + WEATHER_COLUMNS + " FROM " + WeatherEntry.TABLE_NAME +
+            " WHERE " + EXPIRED_SELECTION;
+
+    private WeatherArchive() {
+    }
+
+    /*
+        Folds the expired days into one rollup table.  The new days are aggregated per location
+        and period first, then merged with whatever the period already holds, so a sync that
+        ages out a single day touches a single rollup row.
+     */
+    private static String buildRollupSql(String table, String periodFormat) {
+        String period = "CAST(strftime('" + periodFormat + "', " +
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE +
+                " / 1000, 'unixepoch', 'localtime') AS INTEGER)";
+        return "INSERT INTO " + table + " (" +
+                RollupEntry.COLUMN_LOC_KEY + ", " +
+                RollupEntry.COLUMN_PERIOD + ", " +
+                RollupEntry.COLUMN_COUNT + ", " +
+                RollupEntry.COLUMN_MIN_TEMP + ", " +
+                RollupEntry.COLUMN_MAX_TEMP + ", " +
+                RollupEntry.COLUMN_SUM_MIN_TEMP + ", " +
+                RollupEntry.COLUMN_SUM_MAX_TEMP + ") " +
+                "SELECT d.loc, d.period, " +
+                "d.count + IFNULL(r." + RollupEntry.COLUMN_COUNT + ", 0), " +
+                "MIN(d.min, IFNULL(r." + RollupEntry.COLUMN_MIN_TEMP + ", d.min)), " +
+                "MAX(d.max, IFNULL(r." + RollupEntry.COLUMN_MAX_TEMP + ", d.max)), " +
+                "d.sum_min + IFNULL(r." + RollupEntry.COLUMN_SUM_MIN_TEMP + ", 0), " +
+                "d.sum_max + IFNULL(r." + RollupEntry.COLUMN_SUM_MAX_TEMP + ", 0) " +
+                "FROM (SELECT " +
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY + " AS loc, " +
+                period + " AS period, " +
+                "COUNT(*) AS count, " +
+                "MIN(" + WeatherEntry.COLUMN_MIN_TEMP + ") AS min, " +
+                "MAX(" + WeatherEntry.COLUMN_MAX_TEMP + ") AS max, " +
+                "SUM(" + WeatherEntry.COLUMN_MIN_TEMP + ") AS sum_min, " +
+                "SUM(" + WeatherEntry.COLUMN_MAX_TEMP + ") AS sum_max " +
+                "FROM " + WeatherEntry.TABLE_NAME +
+                " WHERE " + EXPIRED_SELECTION +
+                " GROUP BY loc, period) d " +
+                "LEFT JOIN " + table + " r ON r." + RollupEntry.COLUMN_LOC_KEY + " = d.loc" +
+                " AND r." + RollupEntry.COLUMN_PERIOD + " = d.period";
+    }
+
+    /**
+     * Archives and rolls up every forecast day on or before the prune date.  Must be called
+     * inside the transaction that deletes those days from the weather table.
+     */
+    static void archiveExpired(SQLiteDatabase db, long pruneDate) {
+        Object[] args = new Object[]{pruneDate};
+        // The rollups have to run before the archive insert, since that insert is what marks
+        // a day as already counted.
+        db.execSQL(SQL_ROLLUP_MONTHLY, args);
+        db.execSQL(SQL_ROLLUP_YEARLY, args);
+        db.execSQL(SQL_ARCHIVE, args);
+    }
+}
@@ -43,6 +43,10 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_SNAPSHOT = "snapshot";
+    public static final String PATH_HOURLY = "hourly";
+    public static final String PATH_HISTORY = "history";
+    public static final String PATH_ROLLUP = "rollup";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -126,6 +130,16 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Provider call that upserts a set of days and prunes expired ones in one transaction,
+        // with a single change notification.  Pass the rows as a ContentValues[] under
+        // EXTRA_VALUES and the last date to discard under EXTRA_PRUNE_DATE.  The result
+        // carries the counts under EXTRA_INSERTED and EXTRA_DELETED.
+        public static final String METHOD_REPLACE_FORECAST_WINDOW = "replace_forecast_window";
+        public static final String EXTRA_VALUES = "values";
+        public static final String EXTRA_PRUNE_DATE = "prune_date";
+        public static final String EXTRA_INSERTED = "inserted";
+        public static final String EXTRA_DELETED = "deleted";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -165,4 +179,181 @@ public class WeatherContract {
                 return 0;
         }
     }
+
+    /* Inner class that defines the table contents of the 3-hourly forecast table */
+    public static final class HourlyEntry {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_HOURLY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HOURLY;
+
+        public static final String TABLE_NAME = "hourly";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // Start of the forecast slot, stored as long in milliseconds since the epoch.  Unlike
+        // the weather table this is not normalized to the day.
+        public static final String COLUMN_DATE = "date";
+        // Weather id as returned by API, to identify the icon to be used
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+        // Temperature for the slot (stored as float)
+        public static final String COLUMN_TEMP = "temp";
+        public static final String COLUMN_HUMIDITY = "humidity";
+        public static final String COLUMN_PRESSURE = "pressure";
+        public static final String COLUMN_WIND_SPEED = "wind";
+        public static final String COLUMN_DEGREES = "degrees";
+
+        // Only returned by downsampled queries: the coldest and warmest slot in the bucket,
+        // and how many slots were folded into it.
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+        public static final String COLUMN_SAMPLE_COUNT = "samples";
+
+        // Query parameter with the bucket width in hours for downsampled queries.
+        public static final String PARAM_BUCKET_HOURS = "bucket";
+
+        public static Uri buildHourlyLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        public static Uri buildHourlyLocationWithStartDate(String locationSetting, long startDate) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(COLUMN_DATE, Long.toString(startDate)).build();
+        }
+
+        /**
+         * Builds a uri whose rows are the slots for the location folded into buckets of the
+         * given width, e.g. 6 for quarter days or 24 for whole days.  Buckets are aligned
+         * to local time, so whole days match the daily weather rows.
+         */
+        public static Uri buildHourlyLocationDownsampled(String locationSetting, long startDate,
+                                                         int bucketHours) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(COLUMN_DATE, Long.toString(startDate))
+                    .appendQueryParameter(PARAM_BUCKET_HOURS, Integer.toString(bucketHours))
+                    .build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getStartDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(COLUMN_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        public static int getBucketHoursFromUri(Uri uri) {
+            String bucketString = uri.getQueryParameter(PARAM_BUCKET_HOURS);
+            if (null != bucketString && bucketString.length() > 0)
+                return Integer.parseInt(bucketString);
+            else
+                return 0;
+        }
+    }
+
+    /* Inner class that defines the table contents of the history table */
+    public static final class HistoryEntry {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_HISTORY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HISTORY;
+
+        // Days that have aged out of the forecast window.  The columns are the same as the
+        // weather table's, minus the _id.
+        public static final String TABLE_NAME = "history";
+
+        public static Uri buildHistoryLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        public static Uri buildHistoryLocationWithStartDate(String locationSetting, long startDate) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(WeatherEntry.COLUMN_DATE, Long.toString(startDate))
+                    .build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+    }
+
+    /* Inner class that defines the table contents of the monthly and yearly rollup tables */
+    public static final class RollupEntry {
+
+        public static final String PATH_MONTHLY = "monthly";
+        public static final String PATH_YEARLY = "yearly";
+
+        public static final Uri MONTHLY_CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_ROLLUP).appendPath(PATH_MONTHLY).build();
+        public static final Uri YEARLY_CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_ROLLUP).appendPath(PATH_YEARLY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_ROLLUP;
+
+        public static final String TABLE_MONTHLY = "rollup_monthly";
+        public static final String TABLE_YEARLY = "rollup_yearly";
+
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // The period as a number in local time: yyyyMM for months, yyyy for years.
+        public static final String COLUMN_PERIOD = "period";
+        // Number of archived days folded into the period.
+        public static final String COLUMN_COUNT = "count";
+        // Lowest daily low and highest daily high seen in the period.
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+        // Running sums of the daily highs and lows, so a new day is a constant time update.
+        public static final String COLUMN_SUM_MAX_TEMP = "sum_max";
+        public static final String COLUMN_SUM_MIN_TEMP = "sum_min";
+
+        // Computed on query from the sums and the count.
+        public static final String COLUMN_MEAN_MAX_TEMP = "mean_max";
+        public static final String COLUMN_MEAN_MIN_TEMP = "mean_min";
+
+        public static Uri buildMonthlyLocation(String locationSetting) {
+            return MONTHLY_CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        public static Uri buildYearlyLocation(String locationSetting) {
+            return YEARLY_CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(2);
+        }
+    }
+
+    /* Inner class that defines the snapshot stream of the location and weather tables */
+    public static final class SnapshotEntry {
+
+        // Open for reading to export the database, or for writing to import into it.
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_SNAPSHOT).build();
+
+        public static final String CONTENT_TYPE =
+                "application/vnd." + CONTENT_AUTHORITY + "." + PATH_SNAPSHOT;
+
+        // The import runs after the writer has closed its end, so a writer that wants to know
+        // how it went opens buildImportUri with an id of its own choosing, closes the stream,
+        // and then calls METHOD_AWAIT_IMPORT with that id as the arg.  The result carries the
+        // number of weather rows imported under EXTRA_IMPORTED, or why nothing was imported
+        // under EXTRA_ERROR.
+        public static final String PARAM_IMPORT_ID = "import";
+        public static final String METHOD_AWAIT_IMPORT = "await_snapshot_import";
+        public static final String EXTRA_IMPORTED = "imported";
+        public static final String EXTRA_ERROR = "error";
+
+        public static Uri buildImportUri(String importId) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(PARAM_IMPORT_ID, importId).build();
+        }
+    }
 }
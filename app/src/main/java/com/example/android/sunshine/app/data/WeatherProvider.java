@@ -22,18 +22,57 @@ import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.os.Parcelable;
+import android.os.SystemClock;
+import android.util.Log;
 
-public class WeatherProvider extends ContentProvider {
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class WeatherProvider extends ContentProvider
+        implements ContentProvider.PipeDataWriter<Void> {
+
+    private static final String LOG_TAG = WeatherProvider.class.getSimpleName();
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private final ProviderStats mStats = new ProviderStats();
+    // Snapshot imports a writer asked to hear about, by the id in its uri, oldest first.
+    // Guarded by itself.
+    private final Map<String, ImportTask> mImports = new LinkedHashMap<String, ImportTask>();
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
+    static final int HOURLY = 200;
+    static final int HOURLY_WITH_LOCATION = 201;
     static final int LOCATION = 300;
+    static final int SNAPSHOT = 400;
+    static final int HISTORY_WITH_LOCATION = 500;
+    static final int ROLLUP_MONTHLY_WITH_LOCATION = 600;
+    static final int ROLLUP_YEARLY_WITH_LOCATION = 601;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
@@ -51,6 +90,73 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.LocationEntry._ID);
     }
 
+    private static final SQLiteQueryBuilder sHourlyByLocationSettingQueryBuilder;
+
+    static{
+        sHourlyByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+
+        //hourly INNER JOIN location ON hourly.location_id = location._id
+        sHourlyByLocationSettingQueryBuilder.setTables(
+                WeatherContract.HourlyEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.HourlyEntry.TABLE_NAME +
+                        "." + WeatherContract.HourlyEntry.COLUMN_LOC_KEY +
+                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                        "." + WeatherContract.LocationEntry._ID);
+    }
+
+    //location.location_setting = ? AND hourly.date >= ?
+    private static final String sHourlyLocationSettingWithStartDateSelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.HourlyEntry.TABLE_NAME +
+                    "." + WeatherContract.HourlyEntry.COLUMN_DATE + " >= ? ";
+
+    private static final String sInsertHourly =
+            "INSERT INTO " + WeatherContract.HourlyEntry.TABLE_NAME + " (" +
+                    WeatherContract.HourlyEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherContract.HourlyEntry.COLUMN_DATE + ", " +
+                    WeatherContract.HourlyEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherContract.HourlyEntry.COLUMN_TEMP + ", " +
+                    WeatherContract.HourlyEntry.COLUMN_HUMIDITY + ", " +
+                    WeatherContract.HourlyEntry.COLUMN_PRESSURE + ", " +
+                    WeatherContract.HourlyEntry.COLUMN_WIND_SPEED + ", " +
+                    WeatherContract.HourlyEntry.COLUMN_DEGREES +
+                    ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final long HOUR_IN_MILLIS = 1000 * 60 * 60;
+    private static final long IMPORT_WAIT_TIMEOUT_SECONDS = 30;
+    // Finished imports nobody has awaited are dropped after this long, or once there are
+    // more than MAX_TRACKED_IMPORTS of them.
+    private static final long IMPORT_RESULT_RETENTION_MILLIS = 10 * 60 * 1000;
+    private static final int MAX_TRACKED_IMPORTS = 16;
+    // How far past a downsampled query's start date to look for changes of UTC offset.
+    private static final long LOCAL_OFFSET_HORIZON_MILLIS = 16 * 24 * HOUR_IN_MILLIS;
+
+    //location_id = (SELECT _id FROM location WHERE location_setting = ?)
+    private static final String sLocationKeySelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = (SELECT " +
+                    WeatherContract.LocationEntry._ID + " FROM " +
+                    WeatherContract.LocationEntry.TABLE_NAME + " WHERE " +
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?) ";
+
+    private static final String sLocationKeyWithStartDateSelection =
+            sLocationKeySelection + "AND " + WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
+
+    private static final String[] sRollupColumns = {
+            WeatherContract.RollupEntry.COLUMN_LOC_KEY,
+            WeatherContract.RollupEntry.COLUMN_PERIOD,
+            WeatherContract.RollupEntry.COLUMN_COUNT,
+            WeatherContract.RollupEntry.COLUMN_MIN_TEMP,
+            WeatherContract.RollupEntry.COLUMN_MAX_TEMP,
+            WeatherContract.RollupEntry.COLUMN_SUM_MIN_TEMP + " / " +
+                    WeatherContract.RollupEntry.COLUMN_COUNT + " AS " +
+                    WeatherContract.RollupEntry.COLUMN_MEAN_MIN_TEMP,
+            WeatherContract.RollupEntry.COLUMN_SUM_MAX_TEMP + " / " +
+                    WeatherContract.RollupEntry.COLUMN_COUNT + " AS " +
+                    WeatherContract.RollupEntry.COLUMN_MEAN_MAX_TEMP
+    };
+
     //location.location_setting = ?
     private static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
@@ -108,6 +214,127 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    private Cursor getHourlyByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = WeatherContract.HourlyEntry.getLocationSettingFromUri(uri);
+        long startDate = WeatherContract.HourlyEntry.getStartDateFromUri(uri);
+        int bucketHours = WeatherContract.HourlyEntry.getBucketHoursFromUri(uri);
+        String[] selectionArgs = new String[]{locationSetting, Long.toString(startDate)};
+
+        if (bucketHours <= 0) {
+            return sHourlyByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                    projection,
+                    sHourlyLocationSettingWithStartDateSelection,
+                    selectionArgs,
+                    null,
+                    null,
+                    sortOrder
+            );
+        }
+
+        // Downsampling happens in SQL: each slot is keyed by the bucket its local time falls
+        // in, and the slots are folded with GROUP BY, so only one row per bucket ever leaves
+        // the database.  Buckets are aligned to local time, so 24 hour buckets are the same
+        // days as the daily rows, which are stored at local midnight.  The condition reported
+        // for a bucket is the lowest OWM code in it, which puts storms, rain and snow ahead of
+        // clouds and clear sky.  Wind direction can't be averaged linearly, so it's left out.
+        String date = WeatherContract.HourlyEntry.TABLE_NAME + "." +
+                WeatherContract.HourlyEntry.COLUMN_DATE;
+        long bucketMillis = bucketHours * HOUR_IN_MILLIS;
+        String bucketKey = "((" + date + " + " + localOffset(date, startDate) + ") / " +
+                bucketMillis + ")";
+        // The bucket's local start converted back to UTC: first with the offset at the local
+        // time read as UTC, then with the offset at the instant that gives.
+        String localStart = "(" + bucketKey + " * " + bucketMillis + ")";
+        String bucketStart = "(" + localStart + " - " + localOffset(
+                "(" + localStart + " - " + localOffset(localStart, startDate) + ")", startDate) +
+                ")";
+        String[] downsampledProjection = {
+                bucketStart + " AS " + WeatherContract.HourlyEntry.COLUMN_DATE,
+                "MIN(" + WeatherContract.HourlyEntry.COLUMN_WEATHER_ID + ") AS " +
+                        WeatherContract.HourlyEntry.COLUMN_WEATHER_ID,
+                "AVG(" + WeatherContract.HourlyEntry.COLUMN_TEMP + ") AS " +
+                        WeatherContract.HourlyEntry.COLUMN_TEMP,
+                "MIN(" + WeatherContract.HourlyEntry.COLUMN_TEMP + ") AS " +
+                        WeatherContract.HourlyEntry.COLUMN_MIN_TEMP,
+                "MAX(" + WeatherContract.HourlyEntry.COLUMN_TEMP + ") AS " +
+                        WeatherContract.HourlyEntry.COLUMN_MAX_TEMP,
+                "AVG(" + WeatherContract.HourlyEntry.COLUMN_HUMIDITY + ") AS " +
+                        WeatherContract.HourlyEntry.COLUMN_HUMIDITY,
+                "AVG(" + WeatherContract.HourlyEntry.COLUMN_PRESSURE + ") AS " +
+                        WeatherContract.HourlyEntry.COLUMN_PRESSURE,
+                "AVG(" + WeatherContract.HourlyEntry.COLUMN_WIND_SPEED + ") AS " +
+                        WeatherContract.HourlyEntry.COLUMN_WIND_SPEED,
+                "COUNT(*) AS " + WeatherContract.HourlyEntry.COLUMN_SAMPLE_COUNT
+        };
+        return sHourlyByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                downsampledProjection,
+                sHourlyLocationSettingWithStartDateSelection,
+                selectionArgs,
+                bucketKey,
+                null,
+                bucketKey + " ASC"
+        );
+    }
+
+    /*
+        SQL for the default zone's UTC offset, in milliseconds, at the instant given by the
+        expression.  Usually that's a constant; if the zone changes offset in the days after
+        from, it's a CASE over the changes.  Further out than the hourly forecast reaches,
+        the last offset is used.
+     */
+    private static String localOffset(String utcMillis, long from) {
+        TimeZone zone = TimeZone.getDefault();
+        // Offsets change on the hour, so checking each hour finds every change.
+        long hour = from / HOUR_IN_MILLIS * HOUR_IN_MILLIS;
+        int offset = zone.getOffset(hour);
+        StringBuilder sql = null;
+        for (long end = hour + LOCAL_OFFSET_HORIZON_MILLIS; hour < end; hour += HOUR_IN_MILLIS) {
+            int next = zone.getOffset(hour + HOUR_IN_MILLIS);
+            if (next != offset) {
+                if (sql == null) {
+                    sql = new StringBuilder("(CASE");
+                }
+                sql.append(" WHEN ").append(utcMillis).append(" < ").append(hour + HOUR_IN_MILLIS)
+                        .append(" THEN ").append(offset);
+                offset = next;
+            }
+        }
+        if (sql == null) {
+            return Integer.toString(offset);
+        }
+        return sql.append(" ELSE ").append(offset).append(" END)").toString();
+    }
+
+    private Cursor getHistoryByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = WeatherContract.HistoryEntry.getLocationSettingFromUri(uri);
+        long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+
+        return mOpenHelper.getReadableDatabase().query(
+                WeatherContract.HistoryEntry.TABLE_NAME,
+                projection,
+                sLocationKeyWithStartDateSelection,
+                new String[]{locationSetting, Long.toString(startDate)},
+                null,
+                null,
+                sortOrder
+        );
+    }
+
+    private Cursor getRollupByLocationSetting(Uri uri, String table, String sortOrder) {
+        String locationSetting = WeatherContract.RollupEntry.getLocationSettingFromUri(uri);
+
+        // The means are derived from the running sums, so the projection is fixed.
+        return mOpenHelper.getReadableDatabase().query(
+                table,
+                sRollupColumns,
+                sLocationKeySelection,
+                new String[]{locationSetting},
+                null,
+                null,
+                sortOrder != null ? sortOrder : WeatherContract.RollupEntry.COLUMN_PERIOD + " ASC"
+        );
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
@@ -129,7 +356,18 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*", WEATHER_WITH_LOCATION);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY, HOURLY);
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY + "/*", HOURLY_WITH_LOCATION);
+
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_SNAPSHOT, SNAPSHOT);
+
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY + "/*", HISTORY_WITH_LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_ROLLUP + "/" +
+                WeatherContract.RollupEntry.PATH_MONTHLY + "/*", ROLLUP_MONTHLY_WITH_LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_ROLLUP + "/" +
+                WeatherContract.RollupEntry.PATH_YEARLY + "/*", ROLLUP_YEARLY_WITH_LOCATION);
         return matcher;
     }
 
@@ -162,8 +400,20 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case WEATHER:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
+            case HOURLY:
+                return WeatherContract.HourlyEntry.CONTENT_TYPE;
+            case HOURLY_WITH_LOCATION:
+                return WeatherContract.HourlyEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case SNAPSHOT:
+                return WeatherContract.SnapshotEntry.CONTENT_TYPE;
+            case HISTORY_WITH_LOCATION:
+                return WeatherContract.HistoryEntry.CONTENT_TYPE;
+            case ROLLUP_MONTHLY_WITH_LOCATION:
+                return WeatherContract.RollupEntry.CONTENT_TYPE;
+            case ROLLUP_YEARLY_WITH_LOCATION:
+                return WeatherContract.RollupEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -172,53 +422,112 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
-        // Here's the switch statement that, given a URI, will determine what kind of request it is,
-        // and query the database accordingly.
-        Cursor retCursor;
-        switch (sUriMatcher.match(uri)) {
-            // "weather/*/*"
-            case WEATHER_WITH_LOCATION_AND_DATE:
-            {
-                retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
-                break;
-            }
-            // "weather/*"
-            case WEATHER_WITH_LOCATION: {
-                retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
-                break;
-            }
-            // "weather"
-            case WEATHER: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.WeatherEntry.TABLE_NAME,
-                        projection,
-                        selection,
-                        selectionArgs,
-                        null,
-                        null,
-                        sortOrder
-                );
-                break;
-            }
-            // "location"
-            case LOCATION: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.LocationEntry.TABLE_NAME,
-                        projection,
-                        selection,
-                        selectionArgs,
-                        null,
-                        null,
-                        sortOrder
-                );
-                break;
-            }
+        final long startNanos = System.nanoTime();
+        final int match = sUriMatcher.match(uri);
+        final ProviderStats.Entry stats = mStats.begin(ProviderStats.OP_QUERY, match);
+        int rows = 0;
+        try {
+            // Here's the switch statement that, given a URI, will determine what kind of request it is,
+            // and query the database accordingly.
+            Cursor retCursor;
+            switch (match) {
+                // "weather/*/*"
+                case WEATHER_WITH_LOCATION_AND_DATE:
+                {
+                    retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
+                    break;
+                }
+                // "weather/*"
+                case WEATHER_WITH_LOCATION: {
+                    retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
+                    break;
+                }
+                // "weather"
+                case WEATHER: {
+                    retCursor = mOpenHelper.getReadableDatabase().query(
+                            WeatherContract.WeatherEntry.TABLE_NAME,
+                            projection,
+                            selection,
+                            selectionArgs,
+                            null,
+                            null,
+                            sortOrder
+                    );
+                    break;
+                }
+                // "hourly/*"
+                case HOURLY_WITH_LOCATION: {
+                    retCursor = getHourlyByLocationSetting(uri, projection, sortOrder);
+                    break;
+                }
+                // "hourly"
+                case HOURLY: {
+                    retCursor = mOpenHelper.getReadableDatabase().query(
+                            WeatherContract.HourlyEntry.TABLE_NAME,
+                            projection,
+                            selection,
+                            selectionArgs,
+                            null,
+                            null,
+                            sortOrder
+                    );
+                    break;
+                }
+                // "history/*"
+                case HISTORY_WITH_LOCATION: {
+                    retCursor = getHistoryByLocationSetting(uri, projection, sortOrder);
+                    break;
+                }
+                // "rollup/monthly/*"
+                case ROLLUP_MONTHLY_WITH_LOCATION: {
+                    retCursor = getRollupByLocationSetting(uri,
+                            WeatherContract.RollupEntry.TABLE_MONTHLY, sortOrder);
+                    break;
+                }
+                // "rollup/yearly/*"
+                case ROLLUP_YEARLY_WITH_LOCATION: {
+                    retCursor = getRollupByLocationSetting(uri,
+                            WeatherContract.RollupEntry.TABLE_YEARLY, sortOrder);
+                    break;
+                }
+                // "location"
+                case LOCATION: {
+                    retCursor = mOpenHelper.getReadableDatabase().query(
+                            WeatherContract.LocationEntry.TABLE_NAME,
+                            projection,
+                            selection,
+                            selectionArgs,
+                            null,
+                            null,
+                            sortOrder
+                    );
+                    break;
+                }
 
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+            // SQLite only runs the query when the first window is filled, so count here to
+            // charge that work to the provider rather than to whoever reads the cursor first.
+            rows = retCursor.getCount();
+            retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+            return retCursor;
+        } finally {
+            // Reads don't take the write lock, so there's no wait to measure.
+            mStats.end(stats, startNanos, ProviderStats.LOCK_WAIT_NOT_MEASURED, rows);
         }
-        retCursor.setNotificationUri(getContext().getContentResolver(), uri);
-        return retCursor;
+    }
+
+    /*
+        Opens a write transaction and returns how long that took.  beginTransaction blocks
+        until this connection holds the database lock, so the time spent in it is how long we
+        waited on other writers.  A single statement runs in a transaction of its own anyway,
+        so wrapping one in an explicit transaction costs nothing extra.
+     */
+    private static long beginTransaction(SQLiteDatabase db) {
+        long lockStartNanos = System.nanoTime();
+        db.beginTransaction();
+        return System.nanoTime() - lockStartNanos;
     }
 
     /*
@@ -226,59 +535,92 @@ public class WeatherProvider extends ContentProvider {
      */
     @Override
     public Uri insert(Uri uri, ContentValues values) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final long startNanos = System.nanoTime();
         final int match = sUriMatcher.match(uri);
-        Uri returnUri;
+        final ProviderStats.Entry stats = mStats.begin(ProviderStats.OP_INSERT, match);
+        long lockWaitNanos = ProviderStats.LOCK_WAIT_NOT_MEASURED;
+        int rows = 0;
+        try {
+            final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            Uri returnUri;
+            lockWaitNanos = beginTransaction(db);
+            try {
+                returnUri = insertRow(db, uri, match, values);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            rows = 1;
+            getContext().getContentResolver().notifyChange(uri, null);
+            return returnUri;
+        } finally {
+            mStats.end(stats, startNanos, lockWaitNanos, rows);
+        }
+    }
 
+    // The insert itself, without the stats or the notification, for insert and bulkInsert.
+    private Uri insertRow(SQLiteDatabase db, Uri uri, int match, ContentValues values) {
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
                 long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
-                    returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
+                    return WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
-                break;
             }
             case LOCATION: {
                 long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
-                    returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
+                    return WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
-                break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
-        return returnUri;
     }
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final long startNanos = System.nanoTime();
         final int match = sUriMatcher.match(uri);
-        int rowsDeleted;
-        // this makes delete all rows return the number of rows deleted
-        if ( null == selection ) selection = "1";
-        switch (match) {
-            case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            case LOCATION:
-                rowsDeleted = db.delete(
-                        WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
-        }
-        // Because a null deletes all rows
-        if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+        final ProviderStats.Entry stats = mStats.begin(ProviderStats.OP_DELETE, match);
+        long lockWaitNanos = ProviderStats.LOCK_WAIT_NOT_MEASURED;
+        int rowsDeleted = 0;
+        try {
+            final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            // this makes delete all rows return the number of rows deleted
+            if ( null == selection ) selection = "1";
+            String table;
+            switch (match) {
+                case WEATHER:
+                    table = WeatherContract.WeatherEntry.TABLE_NAME;
+                    break;
+                case HOURLY:
+                    table = WeatherContract.HourlyEntry.TABLE_NAME;
+                    break;
+                case LOCATION:
+                    table = WeatherContract.LocationEntry.TABLE_NAME;
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+            lockWaitNanos = beginTransaction(db);
+            try {
+                rowsDeleted = db.delete(table, selection, selectionArgs);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            // Because a null deletes all rows
+            if (rowsDeleted != 0) {
+                getContext().getContentResolver().notifyChange(uri, null);
+            }
+            return rowsDeleted;
+        } finally {
+            mStats.end(stats, startNanos, lockWaitNanos, rowsDeleted);
         }
-        return rowsDeleted;
     }
 
     private void normalizeDate(ContentValues values) {
@@ -292,54 +634,383 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public int update(
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final long startNanos = System.nanoTime();
         final int match = sUriMatcher.match(uri);
-        int rowsUpdated;
+        final ProviderStats.Entry stats = mStats.begin(ProviderStats.OP_UPDATE, match);
+        long lockWaitNanos = ProviderStats.LOCK_WAIT_NOT_MEASURED;
+        int rowsUpdated = 0;
+        try {
+            final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
 
-        switch (match) {
-            case WEATHER:
-                normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
-            case LOCATION:
-                rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
-        }
-        if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            String table;
+            switch (match) {
+                case WEATHER:
+                    normalizeDate(values);
+                    table = WeatherContract.WeatherEntry.TABLE_NAME;
+                    break;
+                case LOCATION:
+                    table = WeatherContract.LocationEntry.TABLE_NAME;
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+            lockWaitNanos = beginTransaction(db);
+            try {
+                rowsUpdated = db.update(table, values, selection, selectionArgs);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            if (rowsUpdated != 0) {
+                getContext().getContentResolver().notifyChange(uri, null);
+            }
+            return rowsUpdated;
+        } finally {
+            mStats.end(stats, startNanos, lockWaitNanos, rowsUpdated);
         }
-        return rowsUpdated;
     }
 
     @Override
     public int bulkInsert(Uri uri, ContentValues[] values) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final long startNanos = System.nanoTime();
         final int match = sUriMatcher.match(uri);
-        switch (match) {
-            case WEATHER:
-                db.beginTransaction();
-                int returnCount = 0;
-                try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
+        final ProviderStats.Entry stats = mStats.begin(ProviderStats.OP_BULK_INSERT, match);
+        long lockWaitNanos = ProviderStats.LOCK_WAIT_NOT_MEASURED;
+        int returnCount = 0;
+        try {
+            final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            switch (match) {
+                case WEATHER:
+                    lockWaitNanos = beginTransaction(db);
+                    try {
+                        returnCount = insertWeather(db, values);
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                    getContext().getContentResolver().notifyChange(uri, null);
+                    return returnCount;
+                case HOURLY:
+                    lockWaitNanos = beginTransaction(db);
+                    try {
+                        returnCount = insertHourly(db, values);
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                    getContext().getContentResolver().notifyChange(uri, null);
+                    return returnCount;
+                default:
+                    // Not super.bulkInsert: that goes through insert(), which would record
+                    // every row again as an insert of its own.
+                    lockWaitNanos = beginTransaction(db);
+                    try {
+                        for (ContentValues value : values) {
+                            insertRow(db, uri, match, value);
                             returnCount++;
                         }
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
                     }
-                    db.setTransactionSuccessful();
-                } finally {
-                    db.endTransaction();
+                    getContext().getContentResolver().notifyChange(uri, null);
+                    return returnCount;
+            }
+        } finally {
+            mStats.end(stats, startNanos, lockWaitNanos, returnCount);
+        }
+    }
+
+    private int insertWeather(SQLiteDatabase db, ContentValues[] values) {
+        int returnCount = 0;
+        for (ContentValues value : values) {
+            normalizeDate(value);
+            long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+            if (_id != -1) {
+                returnCount++;
+            }
+        }
+        return returnCount;
+    }
+
+    /*
+        A sync brings in eight slots per day per location, so rather than have SQLiteDatabase
+        build and compile an INSERT for every ContentValues, compile it once and only rebind.
+     */
+    private int insertHourly(SQLiteDatabase db, ContentValues[] values) {
+        int returnCount = 0;
+        SQLiteStatement insert = db.compileStatement(sInsertHourly);
+        try {
+            for (ContentValues value : values) {
+                insert.bindLong(1, value.getAsLong(WeatherContract.HourlyEntry.COLUMN_LOC_KEY));
+                insert.bindLong(2, value.getAsLong(WeatherContract.HourlyEntry.COLUMN_DATE));
+                insert.bindLong(3, value.getAsInteger(WeatherContract.HourlyEntry.COLUMN_WEATHER_ID));
+                insert.bindDouble(4, value.getAsDouble(WeatherContract.HourlyEntry.COLUMN_TEMP));
+                insert.bindDouble(5, value.getAsDouble(WeatherContract.HourlyEntry.COLUMN_HUMIDITY));
+                insert.bindDouble(6, value.getAsDouble(WeatherContract.HourlyEntry.COLUMN_PRESSURE));
+                insert.bindDouble(7, value.getAsDouble(WeatherContract.HourlyEntry.COLUMN_WIND_SPEED));
+                insert.bindDouble(8, value.getAsDouble(WeatherContract.HourlyEntry.COLUMN_DEGREES));
+                if (insert.executeInsert() != -1) {
+                    returnCount++;
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
-                return returnCount;
-            default:
-                return super.bulkInsert(uri, values);
+            }
+        } finally {
+            insert.close();
         }
+        return returnCount;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.WeatherEntry.METHOD_REPLACE_FORECAST_WINDOW.equals(method)) {
+            return replaceForecastWindow(extras);
+        }
+        if (WeatherContract.SnapshotEntry.METHOD_AWAIT_IMPORT.equals(method)) {
+            return awaitSnapshotImport(arg);
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /*
+        Upserts the new days and prunes the expired ones in the same transaction, so readers
+        never see the new window next to days that should already be gone, and observers get
+        a single notification instead of one per step.  Pruned days are archived into the
+        history and rollup tables on the way out.
+     */
+    private Bundle replaceForecastWindow(Bundle extras) {
+        if (extras == null
+                || !extras.containsKey(WeatherContract.WeatherEntry.EXTRA_VALUES)
+                || !extras.containsKey(WeatherContract.WeatherEntry.EXTRA_PRUNE_DATE)) {
+            throw new IllegalArgumentException(
+                    WeatherContract.WeatherEntry.METHOD_REPLACE_FORECAST_WINDOW + " needs "
+                            + WeatherContract.WeatherEntry.EXTRA_VALUES + " and "
+                            + WeatherContract.WeatherEntry.EXTRA_PRUNE_DATE);
+        }
+        Parcelable[] parcelables =
+                extras.getParcelableArray(WeatherContract.WeatherEntry.EXTRA_VALUES);
+        if (parcelables == null) {
+            throw new IllegalArgumentException(
+                    WeatherContract.WeatherEntry.EXTRA_VALUES + " must be a ContentValues array");
+        }
+        ContentValues[] values = new ContentValues[parcelables.length];
+        for (int i = 0; i < parcelables.length; i++) {
+            if (!(parcelables[i] instanceof ContentValues)) {
+                throw new IllegalArgumentException(WeatherContract.WeatherEntry.EXTRA_VALUES
+                        + "[" + i + "] is not a ContentValues");
+            }
+            values[i] = (ContentValues) parcelables[i];
+        }
+        long pruneDate = extras.getLong(WeatherContract.WeatherEntry.EXTRA_PRUNE_DATE);
+
+        final long startNanos = System.nanoTime();
+        final ProviderStats.Entry stats = mStats.begin(ProviderStats.OP_REPLACE_WINDOW, WEATHER);
+        long lockWaitNanos = ProviderStats.LOCK_WAIT_NOT_MEASURED;
+        int inserted = 0;
+        int deleted = 0;
+        try {
+            final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            lockWaitNanos = beginTransaction(db);
+            try {
+                inserted = insertWeather(db, values);
+                WeatherArchive.archiveExpired(db, pruneDate);
+                deleted = db.delete(WeatherContract.WeatherEntry.TABLE_NAME,
+                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                        new String[]{Long.toString(pruneDate)});
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            if (inserted != 0 || deleted != 0) {
+                getContext().getContentResolver().notifyChange(
+                        WeatherContract.WeatherEntry.CONTENT_URI, null);
+            }
+            if (deleted != 0) {
+                getContext().getContentResolver().notifyChange(
+                        WeatherContract.HistoryEntry.CONTENT_URI, null);
+                getContext().getContentResolver().notifyChange(
+                        WeatherContract.BASE_CONTENT_URI.buildUpon()
+                                .appendPath(WeatherContract.PATH_ROLLUP).build(), null);
+            }
+
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.WeatherEntry.EXTRA_INSERTED, inserted);
+            result.putInt(WeatherContract.WeatherEntry.EXTRA_DELETED, deleted);
+            return result;
+        } finally {
+            mStats.end(stats, startNanos, lockWaitNanos, inserted + deleted);
+        }
+    }
+
+    /*
+        Snapshots are streamed through a pipe.  Opening for read hands back the read end and
+        writes the tables into the other end on a background thread; opening for write hands
+        back the write end and imports from the read end as the bytes arrive.  If the uri
+        carries an import id, the outcome is kept for awaitSnapshotImport.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (sUriMatcher.match(uri) != SNAPSHOT) {
+            throw new FileNotFoundException("Unknown uri: " + uri);
+        }
+        if ("r".equals(mode)) {
+            return openPipeHelper(uri, WeatherContract.SnapshotEntry.CONTENT_TYPE, null, null, this);
+        }
+        if (!"w".equals(mode) && !"wt".equals(mode)) {
+            throw new FileNotFoundException("Unsupported mode " + mode + " for " + uri);
+        }
+
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = ParcelFileDescriptor.createPipe();
+        } catch (IOException e) {
+            throw new FileNotFoundException("Unable to create pipe for " + uri);
+        }
+        final ParcelFileDescriptor readSide = pipe[0];
+        ImportTask task = new ImportTask(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return importSnapshot(readSide);
+            }
+        });
+        String importId = uri.getQueryParameter(WeatherContract.SnapshotEntry.PARAM_IMPORT_ID);
+        if (importId != null) {
+            synchronized (mImports) {
+                pruneImports();
+                mImports.put(importId, task);
+            }
+        }
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(task);
+        return pipe[1];
+    }
+
+    @Override
+    public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType,
+                                Bundle opts, Void args) {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(output.getFileDescriptor())));
+        try {
+            int count = WeatherSnapshot.write(mOpenHelper.getReadableDatabase(), out);
+            Log.d(LOG_TAG, "Exported snapshot with " + count + " weather rows");
+        } catch (IOException e) {
+            // The reader went away before the snapshot was complete.
+            Log.w(LOG_TAG, "Snapshot export aborted", e);
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error closing snapshot stream", e);
+            }
+        }
+    }
+
+    /*
+        Returns the number of weather rows imported.  On failure the transaction was never
+        marked successful, so nothing was imported, and the exception is rethrown for
+        awaitSnapshotImport to report.
+     */
+    private int importSnapshot(ParcelFileDescriptor input) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new ParcelFileDescriptor.AutoCloseInputStream(input)));
+        try {
+            int count = WeatherSnapshot.read(mOpenHelper.getWritableDatabase(), in);
+            Log.d(LOG_TAG, "Imported snapshot with " + count + " weather rows");
+            getContext().getContentResolver().notifyChange(
+                    WeatherContract.LocationEntry.CONTENT_URI, null);
+            getContext().getContentResolver().notifyChange(
+                    WeatherContract.WeatherEntry.CONTENT_URI, null);
+            return count;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Snapshot import failed", e);
+            throw e;
+        } catch (android.database.SQLException e) {
+            Log.e(LOG_TAG, "Snapshot import failed", e);
+            throw e;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error closing snapshot stream", e);
+            }
+        }
+    }
+
+    /*
+        Blocks until the import opened with the given id has finished, and reports how it went.
+     */
+    private Bundle awaitSnapshotImport(String importId) {
+        ImportTask task;
+        synchronized (mImports) {
+            task = mImports.get(importId);
+        }
+        if (task == null) {
+            throw new IllegalArgumentException("No snapshot import with id " + importId);
+        }
+        Bundle result = new Bundle();
+        try {
+            result.putInt(WeatherContract.SnapshotEntry.EXTRA_IMPORTED,
+                    task.get(IMPORT_WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        } catch (ExecutionException e) {
+            result.putString(WeatherContract.SnapshotEntry.EXTRA_ERROR,
+                    String.valueOf(e.getCause()));
+        } catch (TimeoutException e) {
+            // Still running; the id stays valid so the caller can wait again.
+            result.putString(WeatherContract.SnapshotEntry.EXTRA_ERROR,
+                    "Import still running after " + IMPORT_WAIT_TIMEOUT_SECONDS + "s");
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.putString(WeatherContract.SnapshotEntry.EXTRA_ERROR, "Interrupted");
+            return result;
+        }
+        synchronized (mImports) {
+            mImports.remove(importId);
+        }
+        return result;
+    }
+
+    /*
+        Drops finished imports whose results were never collected: any older than the
+        retention window, then the oldest ones past MAX_TRACKED_IMPORTS.  Imports still
+        running are always kept.  Call with mImports held.
+     */
+    private void pruneImports() {
+        long now = SystemClock.elapsedRealtime();
+        int finished = 0;
+        for (ImportTask task : mImports.values()) {
+            if (task.mFinishedAt != 0) {
+                finished++;
+            }
+        }
+        Iterator<ImportTask> it = mImports.values().iterator();
+        while (it.hasNext()) {
+            ImportTask task = it.next();
+            if (task.mFinishedAt == 0) {
+                continue;
+            }
+            if (finished >= MAX_TRACKED_IMPORTS
+                    || now - task.mFinishedAt > IMPORT_RESULT_RETENTION_MILLIS) {
+                it.remove();
+                finished--;
+            }
+        }
+    }
+
+    /*
+        Reports per-URI latency, row counts and lock wait.  Read it with
+        adb shell dumpsys activity provider com.example.android.sunshine.app/.data.WeatherProvider
+        and pass "reset" to start a fresh measurement.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        mStats.dump(writer);
+        if (args != null && args.length > 0 && "reset".equals(args[0])) {
+            mStats.reset();
+            writer.println("Stats reset.");
+        }
+    }
+
+    ProviderStats getStats() {
+        return mStats;
     }
 
     // You do not need to call this method. This is a method specifically to assist the testing
@@ -351,4 +1022,18 @@ public class WeatherProvider extends ContentProvider {
         mOpenHelper.close();
         super.shutdown();
     }
-}
\ No newline at end of file
+
+    private static class ImportTask extends FutureTask<Integer> {
+        // Zero until the import has finished one way or the other.
+        volatile long mFinishedAt;
+
+        ImportTask(Callable<Integer> callable) {
+            super(callable);
+        }
+
+        @Override
+        protected void done() {
+            mFinishedAt = SystemClock.elapsedRealtime();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.LongSparseArray;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Reads and writes a compact binary snapshot of the location and weather tables.
+ *
+ * The stream is a short header followed by one tagged record per row.  Writing works row by
+ * row; reading parses the whole stream before touching the database.  Short descriptions
+ * repeat a lot ("Clear", "Rain", ...), so each distinct one is written once and referenced
+ * by index after.
+ */
+class WeatherSnapshot {
+
+    private static final int MAGIC = 0x53554e53; // "SUNS"
+    private static final int VERSION = 1;
+
+    // Description indexes are written as unsigned shorts.
+    private static final int MAX_DESCRIPTION_INDEX = 0xffff;
+
+    private static final byte TAG_LOCATION = 'L';
+    private static final byte TAG_WEATHER = 'W';
+    private static final byte TAG_END = 'E';
+
+    private static final String[] LOCATION_COLUMNS = {
+            LocationEntry._ID,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private static final String[] WEATHER_COLUMNS = {
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    private static final String SQL_INSERT_WEATHER = "INSERT INTO " + WeatherEntry.TABLE_NAME +
+            " (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+            WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_WEATHER_ID + ", " +
+            WeatherEntry.COLUMN_SHORT_DESC + ", " +
+            WeatherEntry.COLUMN_MIN_TEMP + ", " +
+            WeatherEntry.COLUMN_MAX_TEMP + ", " +
+            WeatherEntry.COLUMN_HUMIDITY + ", " +
+            WeatherEntry.COLUMN_PRESSURE + ", " +
+            WeatherEntry.COLUMN_WIND_SPEED + ", " +
+            WeatherEntry.COLUMN_DEGREES + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private WeatherSnapshot() {
+    }
+
+    /**
+     * Writes every location and weather row to the stream.
+     *
+     * @return the number of weather rows written
+     */
+    static int write(SQLiteDatabase db, DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+
+        Cursor locations = db.query(LocationEntry.TABLE_NAME, LOCATION_COLUMNS,
+                null, null, null, null, null);
+        try {
+            while (locations.moveToNext()) {
+                out.writeByte(TAG_LOCATION);
+                out.writeLong(locations.getLong(0));
+                out.writeUTF(locations.getString(1));
+                out.writeUTF(locations.getString(2));
+                out.writeDouble(locations.getDouble(3));
+                out.writeDouble(locations.getDouble(4));
+            }
+        } finally {
+            locations.close();
+        }
+
+        HashMap<String, Integer> descriptions = new HashMap<String, Integer>();
+        int weatherCount = 0;
+        // Sorting by location and date keeps the import inserting in index order.
+        Cursor weather = db.query(WeatherEntry.TABLE_NAME, WEATHER_COLUMNS,
+                null, null, null, null,
+                WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE);
+        try {
+            while (weather.moveToNext()) {
+                out.writeByte(TAG_WEATHER);
+                out.writeLong(weather.getLong(0));
+                out.writeLong(weather.getLong(1));
+                out.writeInt(weather.getInt(2));
+
+                String description = weather.getString(3);
+                Integer index = descriptions.get(description);
+                if (index == null) {
+                    // A new description gets the next index and is spelled out once.
+                    if (descriptions.size() > MAX_DESCRIPTION_INDEX) {
+                        throw new IOException("More than " + (MAX_DESCRIPTION_INDEX + 1) +
+                                " distinct descriptions don't fit in a snapshot");
+                    }
+                    out.writeShort(descriptions.size());
+                    out.writeUTF(description);
+                    descriptions.put(description, descriptions.size());
+                } else {
+                    out.writeShort(index);
+                }
+
+                for (int i = 4; i < WEATHER_COLUMNS.length; i++) {
+                    out.writeDouble(weather.getDouble(i));
+                }
+                weatherCount++;
+            }
+        } finally {
+            weather.close();
+        }
+
+        out.writeByte(TAG_END);
+        out.flush();
+        return weatherCount;
+    }
+
+    /**
+     * Reads a snapshot into the database.  The whole stream is read and checked before the
+     * transaction starts, so the write lock is never held while waiting on the writer.
+     * Locations are matched on their location setting, so the row ids in the snapshot don't
+     * have to line up with the ones already on the device.  Weather rows for a day that
+     * already exists are replaced.
+     *
+     * @return the number of weather rows read
+     */
+    static int read(SQLiteDatabase db, DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a weather snapshot");
+        }
+        int version = in.readUnsignedShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+
+        ArrayList<LocationRow> locations = new ArrayList<LocationRow>();
+        ArrayList<WeatherRow> weather = new ArrayList<WeatherRow>();
+        LongSparseArray<LocationRow> locationsById = new LongSparseArray<LocationRow>();
+        ArrayList<String> descriptions = new ArrayList<String>();
+
+        byte tag;
+        while ((tag = in.readByte()) != TAG_END) {
+            switch (tag) {
+                case TAG_LOCATION: {
+                    LocationRow location = new LocationRow();
+                    long snapshotId = in.readLong();
+                    location.setting = in.readUTF();
+                    location.cityName = in.readUTF();
+                    location.lat = in.readDouble();
+                    location.lon = in.readDouble();
+                    locations.add(location);
+                    locationsById.put(snapshotId, location);
+                    break;
+                }
+                case TAG_WEATHER: {
+                    WeatherRow row = new WeatherRow();
+                    row.location = locationsById.get(in.readLong());
+                    if (row.location == null) {
+                        throw new IOException("Weather row references unknown location");
+                    }
+                    row.date = in.readLong();
+                    row.weatherId = in.readInt();
+
+                    int index = in.readUnsignedShort();
+                    if (index == descriptions.size()) {
+                        descriptions.add(in.readUTF());
+                    } else if (index > descriptions.size()) {
+                        throw new IOException("Corrupt snapshot");
+                    }
+                    row.description = descriptions.get(index);
+
+                    row.values = new double[WEATHER_COLUMNS.length - 4];
+                    for (int i = 0; i < row.values.length; i++) {
+                        row.values[i] = in.readDouble();
+                    }
+                    weather.add(row);
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown snapshot record " + tag);
+            }
+        }
+
+        db.beginTransaction();
+        SQLiteStatement insertWeather = db.compileStatement(SQL_INSERT_WEATHER);
+        try {
+            for (LocationRow location : locations) {
+                location.id = findOrInsertLocation(db, location.setting, location.cityName,
+                        location.lat, location.lon);
+            }
+            for (WeatherRow row : weather) {
+                insertWeather.bindLong(1, row.location.id);
+                insertWeather.bindLong(2, row.date);
+                insertWeather.bindLong(3, row.weatherId);
+                insertWeather.bindString(4, row.description);
+                for (int i = 0; i < row.values.length; i++) {
+                    insertWeather.bindDouble(i + 5, row.values[i]);
+                }
+                insertWeather.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insertWeather.close();
+            db.endTransaction();
+        }
+        return weather.size();
+    }
+
+    private static long findOrInsertLocation(SQLiteDatabase db, String setting, String cityName,
+                                             double lat, double lon) {
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME,
+                new String[]{LocationEntry._ID},
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{setting},
+                null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                return cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, setting);
+        values.put(LocationEntry.COLUMN_CITY_NAME, cityName);
+        values.put(LocationEntry.COLUMN_COORD_LAT, lat);
+        values.put(LocationEntry.COLUMN_COORD_LONG, lon);
+        return db.insertOrThrow(LocationEntry.TABLE_NAME, null, values);
+    }
+
+    private static class LocationRow {
+        String setting;
+        String cityName;
+        double lat;
+        double lon;
+        long id;
+    }
+
+    private static class WeatherRow {
+        LocationRow location;
+        long date;
+        int weatherId;
+        String description;
+        // Min, max, humidity, pressure, wind speed and degrees, in WEATHER_COLUMNS order.
+        double[] values;
+    }
+}
@@ -17,7 +17,6 @@ import android.content.SyncResult;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -27,22 +26,22 @@ import android.support.v4.app.TaskStackBuilder;
 import android.text.format.Time;
 import android.util.Log;
 
+import com.example.android.sunshine.app.ForecastSnapshotFile;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SunshineSettings;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherArtCache;
 import com.example.android.sunshine.app.data.WeatherContract;
-import com.google.android.gms.common.api.PendingResult;
-import com.google.android.gms.wearable.Asset;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.Wearable;
+import com.example.android.sunshine.app.shared.WatchForecast;
+import com.example.android.sunshine.app.shared.WatchWeatherContract;
+import com.google.android.gms.wearable.DataMap;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -57,6 +56,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int SYNC_INTERVAL = 20;//60 * 180;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final long HOURLY_RETENTION_MILLIS = DAY_IN_MILLIS;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
 
@@ -82,14 +82,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         Log.d(LOG_TAG, "Starting sync");
         String locationQuery = Utility.getPreferredLocation(getContext());
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
-
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
-
         String format = "json";
         String units = "metric";
         int numDays = 14;
@@ -100,6 +92,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             // http://openweathermap.org/API#forecast
             final String FORECAST_BASE_URL =
                     "http://api.openweathermap.org/data/2.5/forecast/daily?";
+            final String HOURLY_FORECAST_BASE_URL =
+                    "http://api.openweathermap.org/data/2.5/forecast?";
             final String QUERY_PARAM = "q";
             final String FORMAT_PARAM = "mode";
             final String UNITS_PARAM = "units";
@@ -112,6 +106,44 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
                     .build();
 
+            String forecastJsonStr = fetchJson(builtUri);
+            if (forecastJsonStr == null) {
+                return;
+            }
+            long locationId = getWeatherDataFromJson(forecastJsonStr, locationQuery);
+
+            // The 3-hourly forecast covers the next five days in eight slots a day.
+            Uri hourlyUri = Uri.parse(HOURLY_FORECAST_BASE_URL).buildUpon()
+                    .appendQueryParameter(QUERY_PARAM, locationQuery)
+                    .appendQueryParameter(FORMAT_PARAM, format)
+                    .appendQueryParameter(UNITS_PARAM, units)
+                    .build();
+
+            String hourlyJsonStr = fetchJson(hourlyUri);
+            if (hourlyJsonStr != null && locationId != -1) {
+                getHourlyDataFromJson(hourlyJsonStr, locationId);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error ", e);
+            // If the code didn't successfully get the weather data, there's no point in attempting
+            // to parse it.
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            e.printStackTrace();
+        }
+        return;
+    }
+
+    /**
+     * Downloads the given URL and returns the body, or null if there was nothing to read.
+     */
+    private String fetchJson(Uri builtUri) throws IOException {
+        // These two need to be declared outside the try/catch
+        // so that they can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
+        BufferedReader reader = null;
+
+        try {
             URL url = new URL(builtUri.toString());
 
             // Create the request to OpenWeatherMap, and open the connection
@@ -124,7 +156,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             StringBuffer buffer = new StringBuffer();
             if (inputStream == null) {
                 // Nothing to do.
-                return;
+                return null;
             }
             reader = new BufferedReader(new InputStreamReader(inputStream));
 
@@ -138,17 +170,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
             if (buffer.length() == 0) {
                 // Stream was empty.  No point in parsing.
-                return;
+                return null;
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
+            return buffer.toString();
         } finally {
             if (urlConnection != null) {
                 urlConnection.disconnect();
@@ -161,7 +185,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 }
             }
         }
-        return;
     }
 
     /**
@@ -171,7 +194,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
      * Fortunately parsing is easy:  constructor takes the JSON string and converts it
      * into an Object hierarchy for us.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
+    private long getWeatherDataFromJson(String forecastJsonStr,
                                         String locationSetting)
             throws JSONException {
 
@@ -299,41 +322,104 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             if ( cVVector.size() > 0 ) {
                 ContentValues[] cvArray = new ContentValues[cVVector.size()];
                 cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[]{Long.toString(dayTime.setJulianDay(julianStartDay - 1))});
 
+                // insert the new days and delete old data in one transaction, so we don't build
+                // up an endless history and readers never see the two halves separately
+                Bundle extras = new Bundle();
+                extras.putParcelableArray(WeatherContract.WeatherEntry.EXTRA_VALUES, cvArray);
+                extras.putLong(WeatherContract.WeatherEntry.EXTRA_PRUNE_DATE,
+                        dayTime.setJulianDay(julianStartDay - 1));
+                Bundle result = getContext().getContentResolver().call(
+                        WeatherContract.WeatherEntry.CONTENT_URI,
+                        WeatherContract.WeatherEntry.METHOD_REPLACE_FORECAST_WINDOW, null, extras);
+                inserted = result.getInt(WeatherContract.WeatherEntry.EXTRA_INSERTED);
+
+                // So the next cold start draws the new days without waiting for the database.
+                ForecastSnapshotFile.writeFromProvider(getContext());
                 notifyWeather();
                 updateWatchFace();
             }
 
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
+            Log.d(LOG_TAG, "Sync Complete. " + inserted + " Inserted");
+            return locationId;
 
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
         }
+        return -1;
+    }
+
+    /**
+     * Parses the 3-hourly forecast and writes it to the hourly table in one batch, then drops
+     * slots that have fallen out of the retention window.
+     */
+    private void getHourlyDataFromJson(String hourlyJsonStr, long locationId)
+            throws JSONException {
+
+        // Each slot is an element of the "list" array, with the time in seconds in "dt".
+        final String OWM_LIST = "list";
+        final String OWM_DATE = "dt";
+
+        // Temperature, pressure and humidity are children of the "main" object.
+        final String OWM_MAIN = "main";
+        final String OWM_TEMPERATURE = "temp";
+        final String OWM_PRESSURE = "pressure";
+        final String OWM_HUMIDITY = "humidity";
+
+        final String OWM_WIND = "wind";
+        final String OWM_WINDSPEED = "speed";
+        final String OWM_WIND_DIRECTION = "deg";
+
+        final String OWM_WEATHER = "weather";
+        final String OWM_WEATHER_ID = "id";
+
+        JSONArray slotArray = new JSONObject(hourlyJsonStr).getJSONArray(OWM_LIST);
+        ContentValues[] cvArray = new ContentValues[slotArray.length()];
+
+        for (int i = 0; i < slotArray.length(); i++) {
+            JSONObject slot = slotArray.getJSONObject(i);
+            JSONObject main = slot.getJSONObject(OWM_MAIN);
+            JSONObject wind = slot.getJSONObject(OWM_WIND);
+
+            ContentValues hourlyValues = new ContentValues();
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_LOC_KEY, locationId);
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_DATE, slot.getLong(OWM_DATE) * 1000);
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_WEATHER_ID,
+                    slot.getJSONArray(OWM_WEATHER).getJSONObject(0).getInt(OWM_WEATHER_ID));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_TEMP, main.getDouble(OWM_TEMPERATURE));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_HUMIDITY, main.getDouble(OWM_HUMIDITY));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_PRESSURE, main.getDouble(OWM_PRESSURE));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_WIND_SPEED, wind.getDouble(OWM_WINDSPEED));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_DEGREES, wind.optDouble(OWM_WIND_DIRECTION, 0));
+            cvArray[i] = hourlyValues;
+        }
+
+        int inserted = getContext().getContentResolver()
+                .bulkInsert(WeatherContract.HourlyEntry.CONTENT_URI, cvArray);
+
+        // keep a little history for the current day, but not an endless one
+        getContext().getContentResolver().delete(WeatherContract.HourlyEntry.CONTENT_URI,
+                WeatherContract.HourlyEntry.COLUMN_DATE + " < ?",
+                new String[]{Long.toString(System.currentTimeMillis() - HOURLY_RETENTION_MILLIS)});
+
+        Log.d(LOG_TAG, "Hourly sync complete. " + inserted + " Inserted");
     }
 
     private void notifyWeather() {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-        boolean displayNotifications = prefs.getBoolean(displayNotificationsKey,
-                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+        SunshineSettings settings = SunshineSettings.get(context);
 
-        if ( displayNotifications ) {
+        if ( settings.notificationsEnabled ) {
 
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
             String lastNotificationKey = context.getString(R.string.pref_last_notification);
             long lastSync = prefs.getLong(lastNotificationKey, 0);
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
+                String locationQuery = settings.location;
 
                 Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
 
@@ -348,8 +434,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
-                    Bitmap largeIcon = BitmapFactory.decodeResource(resources,
-                            Utility.getArtResourceForWeatherCondition(weatherId));
+                    Bitmap largeIcon = WeatherArtCache.getInstance(context).getArt(weatherId,
+                            resources.getDimensionPixelSize(
+                                    android.R.dimen.notification_large_icon_width));
                     String title = context.getString(R.string.app_name);
 
                     // Define the text of the forecast.
@@ -400,43 +487,72 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
+    /*
+        Puts today's condition code and temperatures for the watch face, and the days from
+        today on as a WatchForecast.  The watch has the art for every code WeatherConditions
+        knows, so no image is sent.
+     */
     public void updateWatchFace(){
-        Context context = getContext();
-        String locationQuery = Utility.getPreferredLocation(context);
-        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
+        final Context context = getContext();
+        SunshineSettings settings = SunshineSettings.get(context);
+        long now = System.currentTimeMillis();
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                settings.location, now);
         Cursor c = context.getContentResolver().query(weatherUri,
                 new String[] {
+                        WeatherContract.WeatherEntry.COLUMN_DATE,
                         WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
                         WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
                         WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
                 }
-                , null, null, null);
-        if (c.moveToFirst()) {
-            Log.v("data","data found");
-            int weatherId = c.getInt(
-                    c.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID));
-            String high_temp = Utility.formatTemperature(context,
-                    c.getDouble(
-                            c.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP)));
-            String low_temp = Utility.formatTemperature(context,
-                    c.getDouble(
-                            c.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP)));
-            Log.v("temp data",high_temp);
-            Bitmap icon = BitmapFactory.decodeResource(context.getResources(),
-                    Utility.getArtResourceForWeatherCondition(weatherId));
-
-            final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-            icon.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
-            Asset icon_asset = Asset.createFromBytes(byteStream.toByteArray());
-
-            PutDataMapRequest requestMap = PutDataMapRequest.create("/weather");
-            requestMap.getDataMap().putAsset("ICON_KEY", icon_asset);
-            requestMap.getDataMap().putString("TEMPERATURE_HIGH_KEY", high_temp);
-            requestMap.getDataMap().putString("TEMPERATURE_LOW_KEY", low_temp);
-            requestMap.getDataMap().putString("TEMPERATURE", "dum");
-            PendingResult<DataApi.DataItemResult> pendingResult = Wearable.DataApi.putDataItem(MainActivity.googleApiClient, requestMap.asPutDataRequest());
+                , null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (c == null) {
+            return;
+        }
+        DataMap dataMap = new DataMap();
+        dataMap.putInt(WatchWeatherContract.KEY_VERSION, WatchWeatherContract.PAYLOAD_VERSION);
+        WatchForecast forecast = new WatchForecast();
+        forecast.setMetric(settings.isMetric);
+        long today = WeatherContract.normalizeDate(now);
+        Time time = new Time();
+        while (c.moveToNext() && forecast.getDayCount() < WatchForecast.MAX_DAYS) {
+            long date = c.getLong(0);
+            int weatherId = c.getInt(1);
+            double high = toDisplayUnits(c.getDouble(2), settings.isMetric);
+            double low = toDisplayUnits(c.getDouble(3), settings.isMetric);
+            if (c.isFirst()) {
+                time.set(date);
+                forecast.setFirstJulianDay(Time.getJulianDay(date, time.gmtoff));
+                if (date == today) {
+                    dataMap.putInt(WatchWeatherContract.KEY_WEATHER_ID, weatherId);
+                    dataMap.putDouble(WatchWeatherContract.KEY_HIGH, high);
+                    dataMap.putDouble(WatchWeatherContract.KEY_LOW, low);
+                }
+            }
+            forecast.addDay(weatherId, high, low);
         }
         c.close();
+        if (forecast.getDayCount() == 0) {
+            return;
+        }
+        dataMap.putByteArray(WatchWeatherContract.KEY_FORECAST, forecast.toByteArray());
+
+        final long payloadHash = WatchPushFilter.hash(dataMap);
+        if (WatchPushFilter.shouldPush(context, payloadHash)) {
+            WatchPushFilter.onPushQueued(payloadHash);
+            WearConnection.getInstance(context).put(WatchWeatherContract.PATH_WEATHER,
+                    dataMap, new WearConnection.DeliveryCallback() {
+                        @Override
+                        public void onDelivered(String path, DataMap dataMap) {
+                            WatchPushFilter.onPushAcknowledged(context, payloadHash);
+                        }
+                    });
+        }
+    }
+
+    // The database is in Celsius; Utility.formatTemperature does the same conversion.
+    private static double toDisplayUnits(double celsius, boolean isMetric) {
+        return isMetric ? celsius : celsius * 1.8 + 32;
     }
 
     /**
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.DataMap;
+
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether a weather data item for the watch is worth sending.
+ *
+ * Syncs run often and usually bring the same weather for today, so the phone would keep
+ * sending the watch what it already has.  Each payload is reduced to a hash of its keys and
+ * values, in key order so the order they were put in doesn't matter, and it is only sent if
+ * the hash differs from the newest one handed to {@link WearConnection}: the one still queued
+ * there if there is one, since it will replace what the watch has, or else the last one the
+ * data layer accepted.  The last accepted hash is kept in the preferences so it survives the
+ * sync process being killed; the queue doesn't, so neither does the queued hash.
+ *
+ * Counts of pushes sent and suppressed are kept for the life of the process and logged.
+ */
+public class WatchPushFilter {
+
+    private static final String LOG_TAG = WatchPushFilter.class.getSimpleName();
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final AtomicInteger sSent = new AtomicInteger();
+    private static final AtomicInteger sSuppressed = new AtomicInteger();
+
+    // The hash of the payload queued but not yet acknowledged, or null.  Guarded by the class.
+    private static Long sQueuedHash;
+
+    private WatchPushFilter() {
+    }
+
+    /**
+     * @return true if the payload differs from the newest one queued or acknowledged and should
+     * be sent; false, counted as suppressed, if the watch has it or is about to
+     */
+    public static boolean shouldPush(Context context, long payloadHash) {
+        Long queued;
+        synchronized (WatchPushFilter.class) {
+            queued = sQueuedHash;
+        }
+        boolean same;
+        if (queued != null) {
+            // Whatever the watch has now, the queued payload is what it will end up with.
+            same = queued == payloadHash;
+        } else {
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+            String key = context.getString(R.string.pref_last_watch_payload);
+            same = prefs.contains(key) && prefs.getLong(key, 0) == payloadHash;
+        }
+        if (same) {
+            int suppressed = sSuppressed.incrementAndGet();
+            Log.d(LOG_TAG, "Watch already has this weather; pushes sent " + sSent.get()
+                    + ", suppressed " + suppressed);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records that the payload with this hash was handed to {@link WearConnection}, replacing
+     * any queued before it.
+     */
+    public static synchronized void onPushQueued(long payloadHash) {
+        sQueuedHash = payloadHash;
+    }
+
+    /**
+     * Records that the data layer accepted the payload with this hash.
+     */
+    public static void onPushAcknowledged(Context context, long payloadHash) {
+        synchronized (WatchPushFilter.class) {
+            // An older payload finishing late leaves the newer one queued.
+            if (sQueuedHash != null && sQueuedHash == payloadHash) {
+                sQueuedHash = null;
+            }
+        }
+        int sent = sSent.incrementAndGet();
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putLong(context.getString(R.string.pref_last_watch_payload), payloadHash)
+                .apply();
+        Log.d(LOG_TAG, "Pushed weather to the watch; pushes sent " + sent + ", suppressed "
+                + sSuppressed.get());
+    }
+
+    /**
+     * Forgets the queued payload, for when the queue was dropped without sending it.
+     */
+    static synchronized void onQueueDropped() {
+        sQueuedHash = null;
+    }
+
+    public static int getSentCount() {
+        return sSent.get();
+    }
+
+    public static int getSuppressedCount() {
+        return sSuppressed.get();
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the data map's keys, value types and values, in key order.
+     */
+    public static long hash(DataMap dataMap) {
+        long hash = FNV_OFFSET_BASIS;
+        for (String key : new TreeSet<String>(dataMap.keySet())) {
+            hash = mix(hash, key);
+            Object value = dataMap.get(key);
+            if (value instanceof Integer || value instanceof Long) {
+                hash = mix(hash, 'L');
+                hash = mix(hash, ((Number) value).longValue());
+            } else if (value instanceof Double || value instanceof Float) {
+                hash = mix(hash, 'D');
+                hash = mix(hash, Double.doubleToLongBits(((Number) value).doubleValue()));
+            } else if (value instanceof Boolean) {
+                hash = mix(hash, 'Z');
+                hash = mix(hash, (Boolean) value ? 1 : 0);
+            } else if (value instanceof byte[]) {
+                hash = mix(hash, 'B');
+                for (byte b : (byte[]) value) {
+                    hash = mixByte(hash, b);
+                }
+            } else if (value instanceof Asset) {
+                Asset asset = (Asset) value;
+                hash = mix(hash, 'A');
+                if (asset.getData() != null) {
+                    for (byte b : asset.getData()) {
+                        hash = mixByte(hash, b);
+                    }
+                } else {
+                    hash = mix(hash, String.valueOf(asset.getDigest()));
+                }
+            } else {
+                hash = mix(hash, 'S');
+                hash = mix(hash, String.valueOf(value));
+            }
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, String value) {
+        hash = mix(hash, value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = mixByte(hash, (byte) (c >> 8));
+            hash = mixByte(hash, (byte) c);
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            hash = mixByte(hash, (byte) (value >>> shift));
+        }
+        return hash;
+    }
+
+    private static long mixByte(long hash, byte b) {
+        return (hash ^ (b & 0xff)) * FNV_PRIME;
+    }
+}
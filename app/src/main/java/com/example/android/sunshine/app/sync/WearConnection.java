@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The process's one connection to the Wearable data layer, for sending data items to the
+ * watch from anywhere, with or without an activity.
+ *
+ * Items are queued by path, so a newer item for a path replaces one that hasn't gone yet, and
+ * sent together shortly after the last one is queued.  The connection is made when there's
+ * something to send, with a timeout, and dropped again once it has been idle for a while.  If
+ * it can't be made, or an item can't be put, the queue is kept and tried again with a growing
+ * delay, unless the device has no data layer at all, in which case the queue is dropped.
+ *
+ * Everything that touches the client runs on the connection's own thread.
+ */
+public class WearConnection {
+
+    private static final String LOG_TAG = WearConnection.class.getSimpleName();
+
+    private static final int MSG_FLUSH = 0;
+    private static final int MSG_DISCONNECT = 1;
+
+    // Long enough to gather the items one sync puts, short enough not to be noticed.
+    private static final long BATCH_DELAY_MS = 500;
+    private static final long CONNECT_TIMEOUT_SECONDS = 15;
+    private static final long PUT_TIMEOUT_SECONDS = 10;
+    private static final long IDLE_DISCONNECT_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long FIRST_RETRY_DELAY_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_RETRY_DELAY_MS = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * Told when an item has been accepted by the data layer, on the connection's thread.
+     */
+    public interface DeliveryCallback {
+        void onDelivered(String path, DataMap dataMap);
+    }
+
+    private static final class Pending {
+        final DataMap dataMap;
+        final DeliveryCallback callback;
+
+        Pending(DataMap dataMap, DeliveryCallback callback) {
+            this.dataMap = dataMap;
+            this.callback = callback;
+        }
+    }
+
+    private static WearConnection sInstance;
+
+    private final GoogleApiClient mClient;
+    private final Handler mHandler;
+    // Guarded by this.
+    private final LinkedHashMap<String, Pending> mQueue = new LinkedHashMap<String, Pending>();
+    // Only touched on the connection's thread.
+    private long mRetryDelayMs = FIRST_RETRY_DELAY_MS;
+
+    public static synchronized WearConnection getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearConnection(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WearConnection(Context context) {
+        mClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .build();
+        HandlerThread thread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                switch (msg.what) {
+                    case MSG_FLUSH:
+                        flush();
+                        break;
+                    case MSG_DISCONNECT:
+                        if (mClient.isConnected()) {
+                            mClient.disconnect();
+                        }
+                        break;
+                }
+            }
+        };
+    }
+
+    /**
+     * Queues a data item for the watch, replacing any not yet sent for the same path.
+     * Returns straight away.
+     *
+     * @param callback told once the data layer accepts the item, or null
+     */
+    public void put(String path, DataMap dataMap, DeliveryCallback callback) {
+        synchronized (this) {
+            mQueue.put(path, new Pending(dataMap, callback));
+        }
+        mHandler.removeMessages(MSG_DISCONNECT);
+        mHandler.removeMessages(MSG_FLUSH);
+        mHandler.sendEmptyMessageDelayed(MSG_FLUSH, BATCH_DELAY_MS);
+    }
+
+    private void flush() {
+        List<String> paths;
+        synchronized (this) {
+            if (mQueue.isEmpty()) {
+                return;
+            }
+            paths = new ArrayList<String>(mQueue.keySet());
+        }
+
+        if (!mClient.isConnected()) {
+            ConnectionResult result =
+                    mClient.blockingConnect(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (!result.isSuccess()) {
+                if (isTerminal(result)) {
+                    // Retrying won't help until the next put, so don't keep waking up for it.
+                    Log.w(LOG_TAG, "No data layer on this device, dropping queue: " + result);
+                    synchronized (this) {
+                        mQueue.clear();
+                    }
+                    WatchPushFilter.onQueueDropped();
+                    mRetryDelayMs = FIRST_RETRY_DELAY_MS;
+                    return;
+                }
+                Log.w(LOG_TAG, "Couldn't connect to the data layer: " + result);
+                scheduleRetry();
+                return;
+            }
+        }
+
+        boolean failed = false;
+        for (String path : paths) {
+            Pending pending;
+            synchronized (this) {
+                pending = mQueue.get(path);
+            }
+            if (pending == null) {
+                continue;
+            }
+            PutDataMapRequest request = PutDataMapRequest.create(path);
+            request.getDataMap().putAll(pending.dataMap);
+            DataApi.DataItemResult result = Wearable.DataApi
+                    .putDataItem(mClient, request.asPutDataRequest())
+                    .await(PUT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (!result.getStatus().isSuccess()) {
+                Log.w(LOG_TAG, "Couldn't put " + path + ": " + result.getStatus());
+                failed = true;
+                continue;
+            }
+            synchronized (this) {
+                // Unless a newer item for the path came in meanwhile, this one's done.
+                if (mQueue.get(path) == pending) {
+                    mQueue.remove(path);
+                }
+            }
+            if (pending.callback != null) {
+                pending.callback.onDelivered(path, pending.dataMap);
+            }
+        }
+
+        if (failed) {
+            scheduleRetry();
+        } else {
+            mRetryDelayMs = FIRST_RETRY_DELAY_MS;
+            mHandler.sendEmptyMessageDelayed(MSG_DISCONNECT, IDLE_DISCONNECT_MS);
+        }
+    }
+
+    /*
+        The Wearable API or Play services itself is missing or unusable on this device.  Other
+        failures, like a timeout, may clear up on their own.
+     */
+    private static boolean isTerminal(ConnectionResult result) {
+        switch (result.getErrorCode()) {
+            case ConnectionResult.API_UNAVAILABLE:
+            case ConnectionResult.SERVICE_MISSING:
+            case ConnectionResult.SERVICE_INVALID:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void scheduleRetry() {
+        mHandler.sendEmptyMessageDelayed(MSG_FLUSH, mRetryDelayMs);
+        mRetryDelayMs = Math.min(mRetryDelayMs * 2, MAX_RETRY_DELAY_MS);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.shared;
+
+/**
+ * A few days of forecast for the watch face, and the compact byte form the phone sends them in
+ * under {@link WatchWeatherContract#KEY_FORECAST}.
+ *
+ * The bytes are big-endian:
+ * <pre>
+ *   0     format version, {@link #FORMAT_VERSION}
+ *   1     flags: bit 0 set if the temperatures are Celsius, clear if Fahrenheit
+ *   2..5  Julian day of the first day
+ *   6     number of days, at most {@link #MAX_DAYS}
+ *   then for each day:
+ *   0..1  OpenWeatherMap condition code, unsigned
+ *   2..3  high, signed, rounded to whole degrees in the flagged units
+ *   4..5  low, likewise
+ * </pre>
+ * A week fits in 49 bytes.
+ *
+ * One instance is meant to be reused: {@link #readFrom(byte[])} and {@link #copyFrom} write
+ * into the arrays it already has and allocate nothing, so the watch can decode on its drawing
+ * path.
+ */
+public final class WatchForecast {
+
+    public static final int MAX_DAYS = 7;
+
+    /** Bumped whenever the byte layout changes; a reader rejects versions it doesn't know. */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_LENGTH = 7;
+    private static final int DAY_LENGTH = 6;
+    private static final int FLAG_METRIC = 1;
+
+    private final int[] mWeatherIds = new int[MAX_DAYS];
+    private final int[] mHighs = new int[MAX_DAYS];
+    private final int[] mLows = new int[MAX_DAYS];
+    private int mDayCount;
+    private int mFirstJulianDay;
+    private boolean mMetric;
+
+    /**
+     * Empties the forecast for reuse.
+     */
+    public void clear() {
+        mDayCount = 0;
+        mFirstJulianDay = 0;
+        mMetric = false;
+    }
+
+    public void setFirstJulianDay(int julianDay) {
+        mFirstJulianDay = julianDay;
+    }
+
+    /**
+     * @param metric whether the temperatures added are Celsius
+     */
+    public void setMetric(boolean metric) {
+        mMetric = metric;
+    }
+
+    /**
+     * Adds the day after the last one added, or the first day.
+     *
+     * @param high the high in the units given to {@link #setMetric(boolean)}; it's rounded
+     * @param low the low, likewise
+     * @return false if the forecast already has {@link #MAX_DAYS} days, and the day was dropped
+     */
+    public boolean addDay(int weatherId, double high, double low) {
+        if (mDayCount == MAX_DAYS) {
+            return false;
+        }
+        mWeatherIds[mDayCount] = clamp(weatherId, 0, 0xffff);
+        mHighs[mDayCount] = clamp(Math.round(high), Short.MIN_VALUE, Short.MAX_VALUE);
+        mLows[mDayCount] = clamp(Math.round(low), Short.MIN_VALUE, Short.MAX_VALUE);
+        mDayCount++;
+        return true;
+    }
+
+    public int getDayCount() {
+        return mDayCount;
+    }
+
+    public int getFirstJulianDay() {
+        return mFirstJulianDay;
+    }
+
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    public int getWeatherId(int day) {
+        checkDay(day);
+        return mWeatherIds[day];
+    }
+
+    public int getHigh(int day) {
+        checkDay(day);
+        return mHighs[day];
+    }
+
+    public int getLow(int day) {
+        checkDay(day);
+        return mLows[day];
+    }
+
+    /**
+     * @return the forecast in the byte form described above
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[HEADER_LENGTH + mDayCount * DAY_LENGTH];
+        bytes[0] = FORMAT_VERSION;
+        bytes[1] = (byte) (mMetric ? FLAG_METRIC : 0);
+        putInt(bytes, 2, mFirstJulianDay);
+        bytes[6] = (byte) mDayCount;
+        int offset = HEADER_LENGTH;
+        for (int i = 0; i < mDayCount; i++) {
+            putShort(bytes, offset, mWeatherIds[i]);
+            putShort(bytes, offset + 2, mHighs[i]);
+            putShort(bytes, offset + 4, mLows[i]);
+            offset += DAY_LENGTH;
+        }
+        return bytes;
+    }
+
+    /**
+     * Replaces this forecast with the one in the bytes.  Allocates nothing.
+     *
+     * @return false if the bytes aren't a forecast this version can read, in which case this
+     * forecast is left as it was
+     */
+    public boolean readFrom(byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER_LENGTH || bytes[0] != FORMAT_VERSION) {
+            return false;
+        }
+        int dayCount = bytes[6] & 0xff;
+        if (dayCount > MAX_DAYS || bytes.length != HEADER_LENGTH + dayCount * DAY_LENGTH) {
+            return false;
+        }
+        mMetric = (bytes[1] & FLAG_METRIC) != 0;
+        mFirstJulianDay = getInt(bytes, 2);
+        mDayCount = dayCount;
+        int offset = HEADER_LENGTH;
+        for (int i = 0; i < dayCount; i++) {
+            mWeatherIds[i] = getShort(bytes, offset) & 0xffff;
+            mHighs[i] = getShort(bytes, offset + 2);
+            mLows[i] = getShort(bytes, offset + 4);
+            offset += DAY_LENGTH;
+        }
+        return true;
+    }
+
+    /**
+     * Makes this forecast a copy of another.  Allocates nothing.
+     */
+    public void copyFrom(WatchForecast other) {
+        mDayCount = other.mDayCount;
+        mFirstJulianDay = other.mFirstJulianDay;
+        mMetric = other.mMetric;
+        System.arraycopy(other.mWeatherIds, 0, mWeatherIds, 0, mDayCount);
+        System.arraycopy(other.mHighs, 0, mHighs, 0, mDayCount);
+        System.arraycopy(other.mLows, 0, mLows, 0, mDayCount);
+    }
+
+    private void checkDay(int day) {
+        if (day < 0 || day >= mDayCount) {
+            throw new IndexOutOfBoundsException("Day " + day + " of " + mDayCount);
+        }
+    }
+
+    private static int clamp(long value, int min, int max) {
+        return (int) Math.max(min, Math.min(max, value));
+    }
+
+    private static void putShort(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >> 8);
+        bytes[offset + 1] = (byte) value;
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        putShort(bytes, offset, value >> 16);
+        putShort(bytes, offset + 2, value);
+    }
+
+    private static short getShort(byte[] bytes, int offset) {
+        return (short) ((bytes[offset] << 8) | (bytes[offset + 1] & 0xff));
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return (getShort(bytes, offset) << 16) | (getShort(bytes, offset + 2) & 0xffff);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.shared;
+
+/**
+ * The data item the phone puts for the watch face: its path and the keys of its data map.
+ *
+ * The phone sends the condition code and the temperatures, and the watch draws the art from
+ * its own resources through {@link WeatherConditions}.  Temperatures are in the units the
+ * user picked on the phone, not yet rounded or formatted.  The coming days go in a
+ * {@link WatchForecast}'s bytes alongside.
+ */
+public final class WatchWeatherContract {
+
+    public static final String PATH_WEATHER = "/weather";
+
+    /**
+     * Bumped whenever the keys or their meaning change.  The phone sends it with every item,
+     * and it is part of what the phone compares to decide whether an item is worth sending.
+     */
+    public static final int PAYLOAD_VERSION = 2;
+
+    /** int: {@link #PAYLOAD_VERSION} of the sender. */
+    public static final String KEY_VERSION = "version";
+
+    /** int: OpenWeatherMap condition code for today. */
+    public static final String KEY_WEATHER_ID = "weather_id";
+    /** double: today's high. */
+    public static final String KEY_HIGH = "high";
+    /** double: today's low. */
+    public static final String KEY_LOW = "low";
+    /** byte[]: today and the days after it, as written by {@link WatchForecast#toByteArray()}. */
+    public static final String KEY_FORECAST = "forecast";
+    /**
+     * Asset: a rendered icon, drawn instead of the bundled art for codes the watch doesn't
+     * know.  The watch still reads it if present.
+     */
+    public static final String KEY_ICON_ASSET = "ICON_KEY";
+
+    private WatchWeatherContract() {
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.shared;
+
+import java.util.Arrays;
+
+/**
+ * Maps OpenWeatherMap condition codes to the handful of conditions the apps draw.
+ *
+ * The table is indexed directly by code, so a lookup is a bounds check and an array read.  It
+ * holds condition numbers rather than drawables because the phone and the watch each have
+ * their own resources; each module keeps one resource array in condition order and passes it
+ * to {@link #getResource(int, int[])}.
+ *
+ * Codes are listed at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+
+    public static final int UNKNOWN = -1;
+    public static final int STORM = 0;
+    public static final int LIGHT_RAIN = 1;
+    public static final int RAIN = 2;
+    public static final int SNOW = 3;
+    public static final int FOG = 4;
+    public static final int CLEAR = 5;
+    public static final int LIGHT_CLOUDS = 6;
+    public static final int CLOUDS = 7;
+    /** The length of a resource array passed to {@link #getResource(int, int[])}. */
+    public static final int COUNT = 8;
+
+    private static final int MIN_CODE = 200;
+    private static final int MAX_CODE = 962;
+
+    private static final byte[] CONDITIONS = new byte[MAX_CODE - MIN_CODE + 1];
+
+    static {
+        Arrays.fill(CONDITIONS, (byte) UNKNOWN);
+        // Thunderstorm
+        fill(200, 232, STORM);
+        // Drizzle
+        fill(300, 321, LIGHT_RAIN);
+        // Rain; freezing rain draws as snow
+        fill(500, 504, RAIN);
+        fill(511, 511, SNOW);
+        fill(520, 531, RAIN);
+        // Snow
+        fill(600, 622, SNOW);
+        // Atmosphere: mist, smoke, haze, dust, fog, sand, ash; squalls and tornado are storms
+        fill(701, 762, FOG);
+        fill(771, 771, STORM);
+        fill(781, 781, STORM);
+        // Clouds
+        fill(800, 800, CLEAR);
+        fill(801, 801, LIGHT_CLOUDS);
+        fill(802, 804, CLOUDS);
+        // Extreme: tornado, tropical storm, hurricane, cold, hot, windy, hail
+        fill(900, 902, STORM);
+        fill(903, 903, SNOW);
+        fill(904, 904, CLEAR);
+        fill(905, 905, CLOUDS);
+        fill(906, 906, SNOW);
+        // Additional: calm through fresh breeze, strong wind through severe gale, storms
+        fill(951, 956, CLEAR);
+        fill(957, 959, CLOUDS);
+        fill(960, 962, STORM);
+    }
+
+    private WeatherConditions() {
+    }
+
+    private static void fill(int firstCode, int lastCode, int condition) {
+        Arrays.fill(CONDITIONS, firstCode - MIN_CODE, lastCode - MIN_CODE + 1, (byte) condition);
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return the condition to draw, or {@link #UNKNOWN} if the code isn't one we know
+     */
+    public static int getCondition(int weatherId) {
+        int index = weatherId - MIN_CODE;
+        if (index < 0 || index >= CONDITIONS.length) {
+            return UNKNOWN;
+        }
+        return CONDITIONS[index];
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @param resources one resource id per condition, indexed by condition
+     * @return the resource for the code's condition, or -1 if the code isn't one we know
+     */
+    public static int getResource(int weatherId, int[] resources) {
+        int condition = getCondition(weatherId);
+        return condition == UNKNOWN ? -1 : resources[condition];
+    }
+}
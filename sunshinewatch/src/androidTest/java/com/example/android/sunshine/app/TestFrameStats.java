@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+
+public class TestFrameStats extends AndroidTestCase {
+
+    public void testCountsFramesAndInvalidates() {
+        FrameStats stats = new FrameStats();
+        for (int i = 0; i < 90; i++) {
+            stats.onFrame(300 * 1000, false);
+        }
+        for (int i = 0; i < 10; i++) {
+            stats.onFrame(20 * 1000 * 1000, true);
+        }
+        for (int i = 0; i < FrameStats.RECENT_INVALIDATES * 2; i++) {
+            stats.onInvalidate(FrameStats.SOURCE_TIMER);
+        }
+        stats.onInvalidate(FrameStats.SOURCE_WEATHER);
+
+        assertEquals(100, stats.getFrameCount());
+        assertEquals(90, stats.getInteractiveFrameCount());
+        assertEquals(10, stats.getAmbientFrameCount());
+        // 300us frames fall in the 250-500us bucket, 20ms ones in 16-32ms.
+        assertEquals(500, stats.getPercentileMicros(0.9));
+        assertEquals(32000, stats.getPercentileMicros(0.95));
+        assertEquals(FrameStats.RECENT_INVALIDATES * 2,
+                stats.getInvalidateCount(FrameStats.SOURCE_TIMER));
+        assertEquals(1, stats.getInvalidateCount(FrameStats.SOURCE_WEATHER));
+        stats.log("Test");
+
+        stats.reset();
+        assertEquals(0, stats.getFrameCount());
+        assertEquals(0, stats.getInvalidateCount(FrameStats.SOURCE_TIMER));
+    }
+
+    /*
+        Recording runs on every frame, so it must not allocate.
+     */
+    public void testRecordingDoesNotAllocate() {
+        FrameStats stats = new FrameStats();
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            for (int i = 0; i < 1000; i++) {
+                stats.onFrame(i * 1000L, i % 2 == 0);
+                stats.onInvalidate(FrameStats.SOURCE_TIMER);
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        assertEquals("Recording frames allocated", 0, Debug.getThreadAllocCount());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import com.example.android.sunshine.app.shared.WatchForecast;
+
+/**
+ * Renders the face offscreen the way MyWatchFace.Engine.onDraw does, for thousands of frames
+ * on a square and a round screen, interactive and ambient, and records them in a
+ * {@link FrameStats}.  The stats are logged for comparing builds, and a run fails if frames
+ * get slow enough to miss a 60Hz display.
+ */
+public class TestWatchFaceBenchmark extends AndroidTestCase {
+
+    private static final int FRAMES = 3000;
+    private static final int WARM_UP_FRAMES = 20;
+    // One frame at 60Hz.  Far more than the face needs, so only a real regression trips it.
+    private static final long BUDGET_MICROS = 16000;
+
+    private WatchFaceRenderer mRenderer;
+    private FrameStats mStats;
+    private Time mTime;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new WatchFaceRenderer(mContext.getResources());
+        mStats = new FrameStats();
+        mTime = new Time();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mRenderer.releaseLayer();
+        super.tearDown();
+    }
+
+    public void testSquareInteractive() {
+        benchmark("Square, interactive", false, 320, 320, false);
+    }
+
+    public void testSquareAmbient() {
+        benchmark("Square, ambient", false, 320, 320, true);
+    }
+
+    // The Moto 360's 320x290, with the flat bottom.
+    public void testRoundInteractive() {
+        benchmark("Round, interactive", true, 320, 290, false);
+    }
+
+    public void testRoundAmbient() {
+        benchmark("Round, ambient", true, 320, 290, true);
+    }
+
+    /*
+        Sets the face up as the engine would for the insets and mode, with weather showing,
+        then draws a frame per second of watch time interactive, or per minute in ambient,
+        so the minute, hour and day change along the way as they would on the wrist.
+     */
+    private void benchmark(String name, boolean round, int width, int height, boolean ambient) {
+        mRenderer.setRound(round);
+        mRenderer.setAntiAlias(!ambient);
+        mRenderer.setShowSeconds(!ambient);
+        setWeather();
+
+        Bitmap frame = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        try {
+            Canvas canvas = new Canvas(frame);
+            Rect bounds = new Rect(0, 0, width, height);
+            mTime.set(0, 0, 23, 31, 11, 2015);
+            long stepMillis = ambient ? 60 * 1000 : 1000;
+            long millis = mTime.toMillis(false);
+            for (int i = 0; i < WARM_UP_FRAMES + FRAMES; i++) {
+                mTime.set(millis + i * stepMillis);
+                long start = System.nanoTime();
+                mRenderer.draw(canvas, bounds, mTime);
+                long drawNanos = System.nanoTime() - start;
+                if (i >= WARM_UP_FRAMES) {
+                    mStats.onFrame(drawNanos, ambient);
+                }
+            }
+        } finally {
+            frame.recycle();
+        }
+
+        mStats.log(name);
+        assertEquals(FRAMES, mStats.getFrameCount());
+        assertEquals(FRAMES, ambient
+                ? mStats.getAmbientFrameCount() : mStats.getInteractiveFrameCount());
+        long p90 = mStats.getPercentileMicros(0.9);
+        assertTrue(name + ": 90% of frames took up to " + p90 + "us", p90 <= BUDGET_MICROS);
+    }
+
+    private void setWeather() {
+        mRenderer.setIcon(Bitmap.createBitmap(WatchFaceRenderer.ICON_SIZE_PX,
+                WatchFaceRenderer.ICON_SIZE_PX, Bitmap.Config.ARGB_8888));
+        mRenderer.setTemperatures("21°", "12°");
+
+        Time firstDay = new Time();
+        firstDay.set(31, 11, 2015);
+        WatchForecast forecast = new WatchForecast();
+        forecast.setFirstJulianDay(Time.getJulianDay(firstDay.toMillis(false), firstDay.gmtoff));
+        Bitmap[] icons = new Bitmap[WatchForecast.MAX_DAYS];
+        for (int i = 0; i < WatchForecast.MAX_DAYS; i++) {
+            forecast.addDay(800, 20 + i, 10 - i);
+            icons[i] = Bitmap.createBitmap(WatchFaceRenderer.STRIP_ICON_SIZE_PX,
+                    WatchFaceRenderer.STRIP_ICON_SIZE_PX, Bitmap.Config.ARGB_8888);
+        }
+        mRenderer.setForecast(forecast, icons);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.shared.WatchForecast;
+
+import java.util.Arrays;
+
+public class TestWatchFaceRenderer extends AndroidTestCase {
+
+    private static final String LOG_TAG = TestWatchFaceRenderer.class.getSimpleName();
+
+    private static final int FACE_SIZE_PX = 320;
+    private static final int FRAMES = 500;
+
+    private Bitmap mFrame;
+    private Canvas mCanvas;
+    private Rect mBounds;
+    private Time mTime;
+    private WatchFaceRenderer mRenderer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFrame = Bitmap.createBitmap(FACE_SIZE_PX, FACE_SIZE_PX, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mFrame);
+        mBounds = new Rect(0, 0, FACE_SIZE_PX, FACE_SIZE_PX);
+        mTime = new Time();
+        mRenderer = new WatchFaceRenderer(mContext.getResources());
+        mRenderer.setIcon(Bitmap.createBitmap(200, 200, Bitmap.Config.ARGB_8888));
+        mRenderer.setTemperatures("21°", "12°");
+
+        // A week from the day the frames below start on, so the strip is drawn over the
+        // change of day.
+        Time firstDay = new Time();
+        firstDay.set(31, 11, 2015);
+        WatchForecast forecast = new WatchForecast();
+        forecast.setFirstJulianDay(Time.getJulianDay(firstDay.toMillis(false), firstDay.gmtoff));
+        forecast.setMetric(true);
+        Bitmap[] icons = new Bitmap[WatchForecast.MAX_DAYS];
+        for (int i = 0; i < WatchForecast.MAX_DAYS; i++) {
+            forecast.addDay(800, 20 + i, 10 - i);
+            icons[i] = Bitmap.createBitmap(WatchFaceRenderer.STRIP_ICON_SIZE_PX,
+                    WatchFaceRenderer.STRIP_ICON_SIZE_PX, Bitmap.Config.ARGB_8888);
+        }
+        mRenderer.setForecast(forecast, icons);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFrame.recycle();
+        super.tearDown();
+    }
+
+    /*
+        Once the first frame has formatted the time, frames allocate nothing, even when the
+        minute, hour or day changes.  This is what MyWatchFace.Engine.onDraw does per frame.
+     */
+    public void testFramesDoNotAllocate() {
+        mRenderer.setShowSeconds(true);
+        mTime.set(59, 59, 23, 31, 11, 2015);
+        mRenderer.draw(mCanvas, mBounds, mTime);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            for (int i = 0; i < FRAMES; i++) {
+                // Steps across a minute, an hour, a day and a year on the first frame.
+                mTime.set(i % 60, i / 60 % 60, 0, 1, 0, 2016);
+                mRenderer.draw(mCanvas, mBounds, mTime);
+            }
+            for (int i = 0; i < FRAMES; i++) {
+                mTime.setToNow();
+                mRenderer.draw(mCanvas, mBounds, mTime);
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        assertEquals("Watch face frames allocated", 0, Debug.getThreadAllocCount());
+    }
+
+    /*
+        Drawing through the offscreen layer gives the same pixels as drawing everything.
+     */
+    public void testLayerMatchesDirectDrawing() {
+        Bitmap direct = Bitmap.createBitmap(FACE_SIZE_PX, FACE_SIZE_PX, Bitmap.Config.ARGB_8888);
+        try {
+            mTime.set(0, 7, 9, 3, 4, 2015);
+            mRenderer.draw(mCanvas, mBounds, mTime);
+            // A new minute only redraws the time over the layer.
+            mTime.set(0, 8, 9, 3, 4, 2015);
+            mRenderer.draw(mCanvas, mBounds, mTime);
+
+            mRenderer.setLayerEnabled(false);
+            mRenderer.draw(new Canvas(direct), mBounds, mTime);
+            assertTrue("The layered frame differs from the direct one", mFrame.sameAs(direct));
+        } finally {
+            direct.recycle();
+        }
+    }
+
+    /*
+        Not a pass/fail check: logs what a frame costs with and without the layer, so the two
+        can be compared on a device.
+     */
+    public void testBenchmarkLayeredAgainstDirect() {
+        long[] layered = timeFrames(true);
+        long[] direct = timeFrames(false);
+        Log.i(LOG_TAG, "Per-frame draw time, layered: " + describe(layered)
+                + "; direct: " + describe(direct));
+    }
+
+    private long[] timeFrames(boolean layerEnabled) {
+        mRenderer.setLayerEnabled(layerEnabled);
+        mTime.setToNow();
+        // Warm up: the first frames format the text and build the layer.
+        for (int i = 0; i < 10; i++) {
+            mRenderer.draw(mCanvas, mBounds, mTime);
+        }
+        long[] samples = new long[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            mTime.setToNow();
+            long start = System.nanoTime();
+            mRenderer.draw(mCanvas, mBounds, mTime);
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples;
+    }
+
+    private static String describe(long[] sortedSamples) {
+        return "median " + sortedSamples[sortedSamples.length / 2] / 1000 + "us, 90th "
+                + sortedSamples[sortedSamples.length * 9 / 10] / 1000 + "us";
+    }
+
+    /*
+        Without seconds the face only has to wake once a minute.
+     */
+    public void testUpdateIntervalFollowsSeconds() {
+        assertEquals(DateUtils.MINUTE_IN_MILLIS, mRenderer.getUpdateIntervalMillis());
+        mRenderer.setShowSeconds(true);
+        assertEquals(DateUtils.SECOND_IN_MILLIS, mRenderer.getUpdateIntervalMillis());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.shared.WatchForecast;
+
+public class TestWatchForecast extends AndroidTestCase {
+
+    private static WatchForecast createForecast() {
+        WatchForecast forecast = new WatchForecast();
+        forecast.setFirstJulianDay(2457315);
+        forecast.setMetric(false);
+        forecast.addDay(800, 71.6, 55.4);
+        forecast.addDay(962, 131, -40.6);
+        forecast.addDay(501, 0, -0.4);
+        return forecast;
+    }
+
+    public void testRoundTrip() {
+        byte[] bytes = createForecast().toByteArray();
+        assertEquals(7 + 3 * 6, bytes.length);
+
+        WatchForecast read = new WatchForecast();
+        assertTrue(read.readFrom(bytes));
+        assertEquals(3, read.getDayCount());
+        assertEquals(2457315, read.getFirstJulianDay());
+        assertFalse(read.isMetric());
+        assertEquals(800, read.getWeatherId(0));
+        assertEquals(72, read.getHigh(0));
+        assertEquals(55, read.getLow(0));
+        assertEquals(962, read.getWeatherId(1));
+        assertEquals(131, read.getHigh(1));
+        assertEquals(-41, read.getLow(1));
+        assertEquals(0, read.getLow(2));
+    }
+
+    public void testKeepsAtMostAWeek() {
+        WatchForecast forecast = new WatchForecast();
+        for (int i = 0; i < WatchForecast.MAX_DAYS; i++) {
+            assertTrue(forecast.addDay(800, i, -i));
+        }
+        assertFalse(forecast.addDay(800, 0, 0));
+        assertEquals(WatchForecast.MAX_DAYS, forecast.getDayCount());
+        assertEquals(49, forecast.toByteArray().length);
+    }
+
+    /*
+        Bytes that aren't a forecast are refused, and leave what was read before in place.
+     */
+    public void testRejectsMalformedBytes() {
+        WatchForecast read = new WatchForecast();
+        assertTrue(read.readFrom(createForecast().toByteArray()));
+
+        byte[] bytes = createForecast().toByteArray();
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        assertFalse(read.readFrom(truncated));
+
+        bytes[0] = WatchForecast.FORMAT_VERSION + 1;
+        assertFalse(read.readFrom(bytes));
+
+        assertFalse(read.readFrom(new byte[0]));
+        assertFalse(read.readFrom(null));
+        assertEquals(3, read.getDayCount());
+        assertEquals(962, read.getWeatherId(1));
+    }
+
+    public void testReadingDoesNotAllocate() {
+        byte[] bytes = createForecast().toByteArray();
+        WatchForecast read = new WatchForecast();
+        WatchForecast copy = new WatchForecast();
+        read.readFrom(bytes);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            for (int i = 0; i < 100; i++) {
+                read.readFrom(bytes);
+                copy.copyFrom(read);
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        assertEquals("Reading a forecast allocated", 0, Debug.getThreadAllocCount());
+        assertEquals(-41, copy.getLow(1));
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * What the watch face's frames cost, for finding out whether a change to the drawing made it
+ * slower.  Off unless R.bool.frame_stats is set.
+ *
+ * It keeps a histogram of how long each frame took to draw, how many frames were drawn in
+ * interactive and in ambient mode, and what asked for each redraw: how many times each
+ * {@code SOURCE_} asked, and the last {@link #RECENT_INVALIDATES} requests in order.
+ * Recording allocates nothing, so it doesn't disturb what it measures.  {@link #log(String)}
+ * writes it all out.
+ */
+public class FrameStats {
+
+    private static final String LOG_TAG = FrameStats.class.getSimpleName();
+
+    /** The update timer, on the second or the minute. */
+    public static final int SOURCE_TIMER = 0;
+    /** The system's once-a-minute tick in ambient mode. */
+    public static final int SOURCE_TIME_TICK = 1;
+    /** Entering or leaving ambient mode. */
+    public static final int SOURCE_AMBIENT = 2;
+    /** New weather from the phone. */
+    public static final int SOURCE_WEATHER = 3;
+    /** A change of time zone or of the clock. */
+    public static final int SOURCE_TIME_CHANGE = 4;
+    private static final String[] SOURCE_NAMES =
+            {"timer", "time tick", "ambient", "weather", "time change"};
+
+    /** How many of the latest invalidate requests are kept. */
+    public static final int RECENT_INVALIDATES = 32;
+
+    // Bucket i counts frames that took less than BUCKET_LIMITS_US[i] microseconds and at
+    // least the limit before it; the last bucket counts the rest.
+    private static final long[] BUCKET_LIMITS_US =
+            {250, 500, 1000, 2000, 4000, 8000, 16000, 32000};
+
+    private final long[] mBuckets = new long[BUCKET_LIMITS_US.length + 1];
+    private long mInteractiveFrames;
+    private long mAmbientFrames;
+    private long mMaxFrameNanos;
+
+    private final long[] mInvalidateCounts = new long[SOURCE_NAMES.length];
+    private final int[] mRecentSources = new int[RECENT_INVALIDATES];
+    private final long[] mRecentTimes = new long[RECENT_INVALIDATES];
+    private int mRecentCount;
+    private int mRecentNext;
+
+    /**
+     * Records one frame.
+     *
+     * @param drawNanos how long it took to draw, from {@link System#nanoTime()}
+     */
+    public void onFrame(long drawNanos, boolean ambient) {
+        long micros = drawNanos / 1000;
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS_US.length && micros >= BUCKET_LIMITS_US[bucket]) {
+            bucket++;
+        }
+        mBuckets[bucket]++;
+        if (ambient) {
+            mAmbientFrames++;
+        } else {
+            mInteractiveFrames++;
+        }
+        mMaxFrameNanos = Math.max(mMaxFrameNanos, drawNanos);
+    }
+
+    /**
+     * Records a request to redraw.
+     *
+     * @param source one of the {@code SOURCE_} constants
+     */
+    public void onInvalidate(int source) {
+        mInvalidateCounts[source]++;
+        mRecentSources[mRecentNext] = source;
+        mRecentTimes[mRecentNext] = SystemClock.elapsedRealtime();
+        mRecentNext = (mRecentNext + 1) % RECENT_INVALIDATES;
+        mRecentCount = Math.min(mRecentCount + 1, RECENT_INVALIDATES);
+    }
+
+    public long getFrameCount() {
+        return mInteractiveFrames + mAmbientFrames;
+    }
+
+    public long getInteractiveFrameCount() {
+        return mInteractiveFrames;
+    }
+
+    public long getAmbientFrameCount() {
+        return mAmbientFrames;
+    }
+
+    public long getInvalidateCount(int source) {
+        return mInvalidateCounts[source];
+    }
+
+    /**
+     * @return an upper bound, in microseconds, on the draw time of the given fraction of
+     * frames: the limit of the histogram bucket that fraction falls in, or the slowest frame
+     * if it falls past the last limit
+     */
+    public long getPercentileMicros(double fraction) {
+        long total = getFrameCount();
+        long target = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_LIMITS_US.length; i++) {
+            seen += mBuckets[i];
+            if (seen >= target) {
+                return BUCKET_LIMITS_US[i];
+            }
+        }
+        return mMaxFrameNanos / 1000;
+    }
+
+    public void reset() {
+        for (int i = 0; i < mBuckets.length; i++) {
+            mBuckets[i] = 0;
+        }
+        for (int i = 0; i < mInvalidateCounts.length; i++) {
+            mInvalidateCounts[i] = 0;
+        }
+        mInteractiveFrames = 0;
+        mAmbientFrames = 0;
+        mMaxFrameNanos = 0;
+        mRecentCount = 0;
+        mRecentNext = 0;
+    }
+
+    /**
+     * Logs everything recorded so far, under the given heading.
+     */
+    public void log(String heading) {
+        StringBuilder sb = new StringBuilder(heading)
+                .append(": ").append(mInteractiveFrames).append(" interactive and ")
+                .append(mAmbientFrames).append(" ambient frames; draw time");
+        for (int i = 0; i < mBuckets.length; i++) {
+            if (mBuckets[i] == 0) {
+                continue;
+            }
+            long lower = i == 0 ? 0 : BUCKET_LIMITS_US[i - 1];
+            sb.append(' ').append(lower);
+            if (i < BUCKET_LIMITS_US.length) {
+                sb.append('-').append(BUCKET_LIMITS_US[i]).append("us: ");
+            } else {
+                sb.append("us+: ");
+            }
+            sb.append(mBuckets[i]);
+        }
+        sb.append("; slowest ").append(mMaxFrameNanos / 1000).append("us");
+        Log.i(LOG_TAG, sb.toString());
+
+        sb.setLength(0);
+        sb.append(heading).append(": invalidates");
+        for (int i = 0; i < SOURCE_NAMES.length; i++) {
+            sb.append(' ').append(SOURCE_NAMES[i]).append(": ").append(mInvalidateCounts[i]);
+        }
+        sb.append("; latest, oldest first:");
+        long now = SystemClock.elapsedRealtime();
+        for (int i = 0; i < mRecentCount; i++) {
+            int index = (mRecentNext - mRecentCount + i + RECENT_INVALIDATES) % RECENT_INVALIDATES;
+            sb.append(' ').append(SOURCE_NAMES[mRecentSources[index]])
+                    .append(" (").append((now - mRecentTimes[index]) / 1000).append("s ago)");
+        }
+        Log.i(LOG_TAG, sb.toString());
+    }
+}
@@ -20,13 +20,10 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
@@ -37,38 +34,32 @@ import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
+import com.example.android.sunshine.app.shared.WatchForecast;
+import com.example.android.sunshine.app.shared.WatchWeatherContract;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.data.FreezableUtils;
-import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import java.io.InputStream;
-import java.util.List;
 import java.util.TimeZone;
-import java.util.concurrent.TimeUnit;
 
 /**
- * Digital watch face with seconds. In ambient mode, the seconds aren't displayed. On devices with
- * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
+ * Digital watch face, with seconds in interactive mode if R.bool.show_seconds is set. On devices
+ * with low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
+ *
+ * In interactive mode the face redraws only when what it shows changes: on the minute, or on
+ * the second when seconds are shown.  Ambient mode relies on {@link Engine#onTimeTick()}.
+ * Setting R.bool.frame_stats logs what the frames cost; see {@link FrameStats}.
  */
 public class MyWatchFace extends CanvasWatchFaceService {
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-    private static final Typeface BOLD_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
-
-    /**
-     * Update rate in milliseconds for interactive mode. We update once a second since seconds are
-     * displayed in interactive mode.
-     */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
 
     @Override
     public Engine onCreateEngine() {
@@ -77,28 +68,27 @@ public class MyWatchFace extends CanvasWatchFaceService {
 
     private class Engine extends CanvasWatchFaceService.Engine implements
             DataApi.DataListener,
+            WeatherIngest.Callback,
             GoogleApiClient.ConnectionCallbacks,
             GoogleApiClient.OnConnectionFailedListener {
 
         private GoogleApiClient googleApiClient;
-        private String mTempHigh = "99";
-        private String mTempLow = "00";
-        private Bitmap mWeatherIcon;
         static final int MSG_UPDATE_TIME = 0;
 
         /**
-         * Handler to update the time periodically in interactive mode.
+         * Handler to update the time in interactive mode, waking at the next second or minute
+         * boundary, whichever the face is showing.
          */
         final Handler mUpdateTimeHandler = new Handler() {
             @Override
             public void handleMessage(Message message) {
                 switch (message.what) {
                     case MSG_UPDATE_TIME:
-                        invalidate();
+                        invalidate(FrameStats.SOURCE_TIMER);
                         if (shouldTimerBeRunning()) {
+                            long intervalMs = mRenderer.getUpdateIntervalMillis();
                             long timeMs = System.currentTimeMillis();
-                            long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                                    - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
+                            long delayMs = intervalMs - (timeMs % intervalMs);
                             mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
                         }
                         break;
@@ -109,30 +99,30 @@ public class MyWatchFace extends CanvasWatchFaceService {
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mTime.clear(intent.getStringExtra("time-zone"));
+                // Only a time zone change says which zone; for a clock change keep ours.
+                String timeZone = intent.getStringExtra("time-zone");
+                mTime.clear(timeZone != null ? timeZone : TimeZone.getDefault().getID());
                 mTime.setToNow();
+                // The hour and date may have moved, and the next boundary with them.
+                updateTimer();
+                invalidate(FrameStats.SOURCE_TIME_CHANGE);
             }
         };
 
         boolean mRegisteredTimeZoneReceiver = false;
 
-        Paint mBackgroundPaint;
-        Paint mTextPaintTimeNormal;
-        Paint mTextPaintTimeBold;
-        Paint mTextPaintDateNormal;
-        Paint mTextPaintDateBold;
-        Paint mTextPaintTempHighNormal;
-        Paint mTextPaintTempHighBold;
-        Paint mTextPaintTempLowNormal;
-        Paint mTextPaintTempLowBold;
+        WatchFaceRenderer mRenderer;
+        WeatherIngest mWeatherIngest;
+        // Null unless R.bool.frame_stats is set.
+        FrameStats mFrameStats;
+
+        // Whether to show seconds while interactive.
+        boolean mSecondsEnabled;
 
         boolean mAmbient;
 
         Time mTime;
 
-        float mXOffset;
-        float mYOffset;
-
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
          * disable anti-aliasing in ambient mode.
@@ -155,29 +145,21 @@ public class MyWatchFace extends CanvasWatchFaceService {
                     .setShowSystemUiTime(false)
                     .build());
 
-            Resources resources = MyWatchFace.this.getResources();
-            mYOffset = resources.getDimension(R.dimen.digital_y_offset);
-
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(resources.getColor(R.color.primary));
-
-            mTextPaintTimeNormal = new Paint();
-            mTextPaintTimeBold = new Paint();
-            mTextPaintDateNormal = new Paint();
-            mTextPaintDateBold = new Paint();
-            mTextPaintTempHighNormal = new Paint();
-            mTextPaintTempHighBold = new Paint();
-            mTextPaintTempLowNormal = new Paint();
-            mTextPaintTempLowBold = new Paint();
-
-            mTextPaintTimeNormal = createTextPaint(resources.getColor(R.color.white_text), NORMAL_TYPEFACE);
-            mTextPaintTimeBold = createTextPaint(resources.getColor(R.color.white_text), BOLD_TYPEFACE);
-            mTextPaintDateNormal = createTextPaint(resources.getColor(R.color.grey_text), NORMAL_TYPEFACE);
-            mTextPaintDateBold = createTextPaint(resources.getColor(R.color.grey_text), BOLD_TYPEFACE);
-            mTextPaintTempHighNormal = createTextPaint(resources.getColor(R.color.white_text), NORMAL_TYPEFACE);
-            mTextPaintTempHighBold = createTextPaint(resources.getColor(R.color.white_text), BOLD_TYPEFACE);
-            mTextPaintTempLowNormal = createTextPaint(resources.getColor(R.color.grey_text), NORMAL_TYPEFACE);
-            mTextPaintTempLowBold = createTextPaint(resources.getColor(R.color.grey_text), BOLD_TYPEFACE);
+            mRenderer = new WatchFaceRenderer(MyWatchFace.this.getResources());
+            WatchWeatherFile weatherFile = new WatchWeatherFile(MyWatchFace.this);
+            mWeatherIngest = new WeatherIngest(MyWatchFace.this.getResources(), googleApiClient,
+                    weatherFile, this);
+            // Show the last weather we had straight away; the phone's current item replaces it
+            // once we're connected.
+            DataMap savedWeather = weatherFile.read();
+            if (savedWeather != null) {
+                mWeatherIngest.applyNow(savedWeather);
+            }
+            mSecondsEnabled = MyWatchFace.this.getResources().getBoolean(R.bool.show_seconds);
+            mRenderer.setShowSeconds(mSecondsEnabled);
+            if (MyWatchFace.this.getResources().getBoolean(R.bool.frame_stats)) {
+                mFrameStats = new FrameStats();
+            }
 
             mTime = new Time();
         }
@@ -185,17 +167,18 @@ public class MyWatchFace extends CanvasWatchFaceService {
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mRenderer.releaseLayer();
+            mWeatherIngest.quit();
+            if (mFrameStats != null) {
+                mFrameStats.log("Destroyed");
+            }
+            if (googleApiClient.isConnected()) {
+                Wearable.DataApi.removeListener(googleApiClient, this);
+            }
+            googleApiClient.disconnect();
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor, Typeface typeface) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            paint.setTypeface(typeface);
-            paint.setAntiAlias(true);
-            return paint;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
@@ -211,6 +194,9 @@ public class MyWatchFace extends CanvasWatchFaceService {
                 mTime.setToNow();
             } else {
                 unregisterReceiver();
+                if (mFrameStats != null) {
+                    mFrameStats.log("Hidden");
+                }
                 if (googleApiClient != null && googleApiClient.isConnected()) {
                 //   Wearable.DataApi.removeListener(googleApiClient, onDataChangedListener);
                     googleApiClient.disconnect();
@@ -228,6 +214,7 @@ public class MyWatchFace extends CanvasWatchFaceService {
             }
             mRegisteredTimeZoneReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
             MyWatchFace.this.registerReceiver(mTimeZoneReceiver, filter);
         }
 
@@ -244,36 +231,7 @@ public class MyWatchFace extends CanvasWatchFaceService {
             super.onApplyWindowInsets(insets);
 
             // Load resources that have alternate values for round watches.
-            Resources resources = MyWatchFace.this.getResources();
-            boolean isRound = insets.isRound();
-            mXOffset = resources.getDimension(isRound
-                    ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
-
-            //set text size based on watch shape
-            mTextPaintTimeNormal.setTextSize(resources.getDimension(isRound
-                    ? R.dimen.digital_text_time_size_round
-                    : R.dimen.digital_text_time_size));
-            mTextPaintTimeBold.setTextSize(resources.getDimension(isRound
-                    ? R.dimen.digital_text_time_size_round
-                    : R.dimen.digital_text_time_size));
-            mTextPaintDateNormal.setTextSize(resources.getDimension(isRound
-                    ? R.dimen.digital_text_date_size_round
-                    : R.dimen.digital_text_date_size));
-            mTextPaintDateBold.setTextSize(resources.getDimension(isRound
-                    ? R.dimen.digital_text_date_size_round
-                    : R.dimen.digital_text_date_size));
-            mTextPaintTempHighNormal.setTextSize(resources.getDimension(isRound
-                    ? R.dimen.digital_text_temp_size_round
-                    : R.dimen.digital_text_temp_size));
-            mTextPaintTempHighBold.setTextSize(resources.getDimension(isRound
-                    ? R.dimen.digital_text_temp_size_round
-                    : R.dimen.digital_text_temp_size));
-            mTextPaintTempLowNormal.setTextSize(resources.getDimension(isRound
-                    ? R.dimen.digital_text_temp_size_round
-                    : R.dimen.digital_text_temp_size));
-            mTextPaintTempLowBold.setTextSize(resources.getDimension(isRound
-                    ? R.dimen.digital_text_temp_size_round
-                    : R.dimen.digital_text_temp_size));
+            mRenderer.setRound(insets.isRound());
         }
 
         @Override
@@ -285,7 +243,7 @@ public class MyWatchFace extends CanvasWatchFaceService {
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-            invalidate();
+            invalidate(FrameStats.SOURCE_TIME_TICK);
         }
 
         @Override
@@ -294,16 +252,10 @@ public class MyWatchFace extends CanvasWatchFaceService {
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
                 if (mLowBitAmbient) {
-                    mTextPaintTimeNormal.setAntiAlias(!inAmbientMode);
-                    mTextPaintTimeBold.setAntiAlias(!inAmbientMode);
-                    mTextPaintDateNormal.setAntiAlias(!inAmbientMode);
-                    mTextPaintDateBold.setAntiAlias(!inAmbientMode);
-                    mTextPaintTempHighNormal.setAntiAlias(!inAmbientMode);
-                    mTextPaintTempHighBold.setAntiAlias(!inAmbientMode);
-                    mTextPaintTempLowNormal.setAntiAlias(!inAmbientMode);
-                    mTextPaintTempLowBold.setAntiAlias(!inAmbientMode);
+                    mRenderer.setAntiAlias(!inAmbientMode);
                 }
-                invalidate();
+                mRenderer.setShowSeconds(mSecondsEnabled && !inAmbientMode);
+                invalidate(FrameStats.SOURCE_AMBIENT);
             }
 
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -313,62 +265,22 @@ public class MyWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // Draw the background.
-            canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-
-            int centerX = bounds.centerX();
-            int centerY = bounds.centerY();
-            int spacing_5 = 5;
-            int spacing_10 = 10;
-            int spacing_20 = 20;
-            int spacing_30 = 30;
-            int y_origin = centerY;
-            //time object
             mTime.setToNow();
-
-            //generic rectangle for bound measurement
-            Rect mTextBounds = new Rect();
-
-            //weather icon
-            if(mWeatherIcon != null) {
-                mWeatherIcon = Bitmap.createScaledBitmap(mWeatherIcon,55,55,true); //scale to size
-                y_origin -= mWeatherIcon.getHeight() / 2;
-                canvas.drawBitmap(mWeatherIcon, centerX - mWeatherIcon.getWidth() / 2, y_origin, null);
+            if (mFrameStats == null) {
+                mRenderer.draw(canvas, bounds, mTime);
+                return;
             }
+            long start = System.nanoTime();
+            mRenderer.draw(canvas, bounds, mTime);
+            mFrameStats.onFrame(System.nanoTime() - start, mAmbient);
+        }
 
-            //date string
-            String date_text = String.format("%02d.%02d.%d", (mTime.month + 1), mTime.monthDay, mTime.year);
-            mTextPaintDateNormal.getTextBounds(date_text,0,date_text.length(),mTextBounds);
-            y_origin -= (mTextBounds.height() + spacing_5);
-            canvas.drawText(date_text,
-                    centerX - mTextBounds.width()/2,
-                    y_origin,
-                    mTextPaintDateNormal);
-
-            //time
-            String time_text_hour = String.format("%d:", mTime.hour);
-            mTextPaintTimeBold.getTextBounds(time_text_hour,0,time_text_hour.length(), mTextBounds);
-            y_origin -= (mTextBounds.height() + spacing_10);
-            canvas.drawText(time_text_hour, centerX - mTextBounds.width(), y_origin, mTextPaintTimeBold);
-            String time_text_minute = String.format("%02d",mTime.minute);
-            mTextPaintTimeNormal.getTextBounds(time_text_minute,0,time_text_minute.length(),mTextBounds);
-            canvas.drawText(time_text_minute, centerX, y_origin, mTextPaintTimeNormal);
-
-            //temperature
-            String temp_high_text = mTempHigh;
-            mTextPaintTempHighBold.getTextBounds(temp_high_text,0,temp_high_text.length(), mTextBounds);
-            if(mWeatherIcon != null){
-                y_origin = centerY + mWeatherIcon.getHeight()/2 + spacing_20;
-            }
-            else {
-                y_origin = centerY + spacing_20;
+        // Asks for a frame, noting why if frame stats are on.
+        private void invalidate(int source) {
+            if (mFrameStats != null) {
+                mFrameStats.onInvalidate(source);
             }
-            canvas.drawText(temp_high_text, centerX - mTextBounds.width(), y_origin, mTextPaintTempHighBold);
-
-            String temp_low_text = mTempLow;
-            mTextPaintTempLowNormal.getTextBounds(temp_low_text, 0, temp_low_text.length(), mTextBounds);
-            canvas.drawText(temp_low_text, centerX, y_origin, mTextPaintTempLowNormal);
-
+            invalidate();
         }
 
         /**
@@ -390,35 +302,43 @@ public class MyWatchFace extends CanvasWatchFaceService {
             return isVisible() && !isInAmbientMode();
         }
 
-        private void processDataIem(DataMap dataMap){
-            if (dataMap.containsKey("ICON_KEY")) {
-                mWeatherIcon = loadBitmapFromAsset(dataMap.getAsset("ICON_KEY"));
-            }
-
-            if (dataMap.containsKey("TEMPERATURE_HIGH_KEY")) {
-                mTempHigh = dataMap.getString("TEMPERATURE_HIGH_KEY");
-            }
-
-            if (dataMap.containsKey("TEMPERATURE_LOW_KEY")) {
-                mTempLow = dataMap.getString("TEMPERATURE_LOW_KEY");
-            }
-        }
-
-        public Bitmap loadBitmapFromAsset(Asset asset) {
-            if(googleApiClient != null && googleApiClient.isConnected()){
-                InputStream assetInputStream = Wearable.DataApi.getFdForAsset(
-                        googleApiClient, asset).await().getInputStream();
-                if (assetInputStream != null) {
-                    return BitmapFactory.decodeStream(assetInputStream);
-                }
+        @Override
+        public void onWeather(Bitmap icon, String high, String low, WatchForecast forecast,
+                              Bitmap[] forecastIcons) {
+            mRenderer.setIcon(icon);
+            if (high != null && low != null) {
+                mRenderer.setTemperatures(high, low);
             }
-            return null;
+            mRenderer.setForecast(forecast, forecastIcons);
+            invalidate(FrameStats.SOURCE_WEATHER);
         }
 
         @Override
         public void onConnected(Bundle bundle) {
             Log.d("wear", "onConnected");
             Wearable.DataApi.addListener(googleApiClient, this);
+            // The weather may have changed while we weren't listening, and no change event
+            // will come for it, so ask for the current item.
+            Uri weatherUri = new Uri.Builder()
+                    .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                    .path(WatchWeatherContract.PATH_WEATHER)
+                    .build();
+            Wearable.DataApi.getDataItems(googleApiClient, weatherUri)
+                    .setResultCallback(new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(DataItemBuffer dataItems) {
+                            DataMap latest = null;
+                            if (dataItems.getStatus().isSuccess()) {
+                                for (DataItem item : dataItems) {
+                                    latest = DataMapItem.fromDataItem(item).getDataMap();
+                                }
+                            }
+                            dataItems.release();
+                            if (latest != null) {
+                                mWeatherIngest.submit(latest);
+                            }
+                        }
+                    });
         }
 
         @Override
@@ -434,27 +354,20 @@ public class MyWatchFace extends CanvasWatchFaceService {
         @Override
         public void onDataChanged(DataEventBuffer dataEvents) {
             Log.v("wear","data change received");
-            final List<DataEvent> events = FreezableUtils
-                    .freezeIterable(dataEvents);
-
-            ConnectionResult connectionResult =
-                    googleApiClient.blockingConnect(15, TimeUnit.SECONDS);
-
-            if (!connectionResult.isSuccess()) {
-                Log.e("connections", "Failed to connect to GoogleApiClient.");
-                return;
-            }
-
-            for (DataEvent event : events) {
+            // Only the newest weather matters; the ingest thread does the decoding.
+            DataMap latest = null;
+            for (DataEvent event : dataEvents) {
                 if (event.getType() == DataEvent.TYPE_CHANGED) {
                     DataItem item = event.getDataItem();
-                    if (item.getUri().getPath().equals("/weather")) {
-                        processDataIem(DataMapItem.fromDataItem(item).getDataMap());
+                    if (item.getUri().getPath().equals(WatchWeatherContract.PATH_WEATHER)) {
+                        latest = DataMapItem.fromDataItem(item).getDataMap();
                     }
                 }
             }
             dataEvents.release();
-            invalidate();
+            if (latest != null) {
+                mWeatherIngest.submit(latest);
+            }
         }
     }
 }
\ No newline at end of file
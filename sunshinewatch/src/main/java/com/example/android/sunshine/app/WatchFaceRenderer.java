@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.text.format.DateUtils;
+import android.text.format.Time;
+
+import com.example.android.sunshine.app.shared.WatchForecast;
+
+/**
+ * Draws the watch face: the time, the date, the weather icon and temperatures from the phone,
+ * and below them a strip of the next few days.
+ *
+ * {@link #draw} runs for every frame and allocates nothing.  The time and date are written
+ * into reusable char buffers and measured only when the minute or the day changes, the
+ * temperatures are measured when they arrive, and the icon is scaled once, when it's set.
+ *
+ * Only the time changes from one frame to the next.  Everything else (background, icon, date,
+ * temperatures and the strip) is drawn into an offscreen layer, redrawn only when one of those changes,
+ * and each frame copies the layer and draws the time on top.
+ */
+public class WatchFaceRenderer {
+
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+    private static final Typeface BOLD_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
+
+    /** Width and height the weather icon is drawn at, in pixels. */
+    static final int ICON_SIZE_PX = 55;
+    /** Width and height of the icons in the strip of coming days, in pixels. */
+    static final int STRIP_ICON_SIZE_PX = 24;
+
+    // Days after today shown in the strip, if the forecast has them.
+    private static final int STRIP_DAYS = 3;
+    private static final int STRIP_COLUMN_WIDTH = 60;
+    private static final int STRIP_SPACING = 8;
+
+    private static final int DATE_SPACING = 5;
+    private static final int TIME_SPACING = 10;
+    private static final int TEMPERATURE_SPACING = 20;
+
+    private final Resources mResources;
+
+    private final Paint mBackgroundPaint;
+    private final Paint mHourPaint;
+    private final Paint mMinutePaint;
+    private final Paint mDatePaint;
+    private final Paint mHighPaint;
+    private final Paint mLowPaint;
+    private final Paint mSecondsPaint;
+    private final Paint mStripPaint;
+
+    private Bitmap mIcon;
+    private String mHighText = "99";
+    private String mLowText = "00";
+
+    // The coming days, and their labels, temperatures and icons, made when the forecast is set.
+    private final WatchForecast mForecast = new WatchForecast();
+    private final String[] mStripLabels = new String[WatchForecast.MAX_DAYS];
+    private final String[] mStripTemperatures = new String[WatchForecast.MAX_DAYS];
+    private final Bitmap[] mStripIcons = new Bitmap[WatchForecast.MAX_DAYS];
+
+    // "MM.dd.yyyy", "H:", "mm" and "ss", rewritten when the day or the minute changes.
+    private final char[] mDateChars = new char[10];
+    private int mDateLength;
+    private final char[] mHourChars = new char[3];
+    private int mHourLength;
+    private final char[] mMinuteChars = new char[2];
+    private final char[] mSecondChars = new char[2];
+    private float mMinuteWidth;
+    private boolean mShowSeconds;
+
+    // What the buffers hold, or -1 before the first frame.
+    private int mFormattedDay = -1;
+    // Julian day of the date shown, which the strip starts after.
+    private int mJulianDay;
+    private int mFormattedMinute = -1;
+
+    private final Rect mDateBounds = new Rect();
+    private final Rect mHourBounds = new Rect();
+    private final Rect mHighBounds = new Rect();
+
+    // Baseline of the date, which the time sits above.  Set when the static content is drawn.
+    private int mDateY;
+
+    private boolean mLayerEnabled = true;
+    private Bitmap mLayer;
+    private final Canvas mLayerCanvas = new Canvas();
+    private boolean mLayerDirty = true;
+
+    public WatchFaceRenderer(Resources resources) {
+        mResources = resources;
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(resources.getColor(R.color.primary));
+
+        mHourPaint = createTextPaint(resources.getColor(R.color.white_text), BOLD_TYPEFACE);
+        mMinutePaint = createTextPaint(resources.getColor(R.color.white_text), NORMAL_TYPEFACE);
+        mDatePaint = createTextPaint(resources.getColor(R.color.grey_text), NORMAL_TYPEFACE);
+        mHighPaint = createTextPaint(resources.getColor(R.color.white_text), BOLD_TYPEFACE);
+        mLowPaint = createTextPaint(resources.getColor(R.color.grey_text), NORMAL_TYPEFACE);
+        mSecondsPaint = createTextPaint(resources.getColor(R.color.grey_text), NORMAL_TYPEFACE);
+        mStripPaint = createTextPaint(resources.getColor(R.color.grey_text), NORMAL_TYPEFACE);
+        mStripPaint.setTextAlign(Paint.Align.CENTER);
+
+        setRound(false);
+    }
+
+    private static Paint createTextPaint(int textColor, Typeface typeface) {
+        Paint paint = new Paint();
+        paint.setColor(textColor);
+        paint.setTypeface(typeface);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    /**
+     * Picks the text sizes for a round or a square screen.
+     */
+    public void setRound(boolean isRound) {
+        float timeSize = mResources.getDimension(isRound
+                ? R.dimen.digital_text_time_size_round : R.dimen.digital_text_time_size);
+        float dateSize = mResources.getDimension(isRound
+                ? R.dimen.digital_text_date_size_round : R.dimen.digital_text_date_size);
+        float temperatureSize = mResources.getDimension(isRound
+                ? R.dimen.digital_text_temp_size_round : R.dimen.digital_text_temp_size);
+        float stripSize = mResources.getDimension(isRound
+                ? R.dimen.digital_text_strip_size_round : R.dimen.digital_text_strip_size);
+        mHourPaint.setTextSize(timeSize);
+        mMinutePaint.setTextSize(timeSize);
+        mDatePaint.setTextSize(dateSize);
+        mSecondsPaint.setTextSize(dateSize);
+        mHighPaint.setTextSize(temperatureSize);
+        mLowPaint.setTextSize(temperatureSize);
+        mStripPaint.setTextSize(stripSize);
+
+        // Everything measured so far was for the old sizes.
+        mFormattedDay = -1;
+        mFormattedMinute = -1;
+        measureTemperatures();
+        mLayerDirty = true;
+    }
+
+    /**
+     * Turns anti-aliasing off for low-bit ambient mode, and back on.
+     */
+    public void setAntiAlias(boolean antiAlias) {
+        mHourPaint.setAntiAlias(antiAlias);
+        mMinutePaint.setAntiAlias(antiAlias);
+        mDatePaint.setAntiAlias(antiAlias);
+        mHighPaint.setAntiAlias(antiAlias);
+        mLowPaint.setAntiAlias(antiAlias);
+        mSecondsPaint.setAntiAlias(antiAlias);
+        mStripPaint.setAntiAlias(antiAlias);
+        mLayerDirty = true;
+    }
+
+    /**
+     * @param icon the condition icon at any size, or null for none; it's scaled here, once
+     */
+    public void setIcon(Bitmap icon) {
+        if (icon != null && (icon.getWidth() != ICON_SIZE_PX || icon.getHeight() != ICON_SIZE_PX)) {
+            icon = Bitmap.createScaledBitmap(icon, ICON_SIZE_PX, ICON_SIZE_PX, true);
+        }
+        mIcon = icon;
+        mLayerDirty = true;
+    }
+
+    /**
+     * Shows or hides the seconds, drawn small after the minutes.  Only worth showing while the
+     * face is interactive; see {@link #getUpdateIntervalMillis()}.
+     */
+    public void setShowSeconds(boolean showSeconds) {
+        mShowSeconds = showSeconds;
+    }
+
+    /**
+     * @return how often what's drawn changes: every second while showing seconds, otherwise
+     * every minute
+     */
+    public long getUpdateIntervalMillis() {
+        return mShowSeconds ? DateUtils.SECOND_IN_MILLIS : DateUtils.MINUTE_IN_MILLIS;
+    }
+
+    public void setTemperatures(String high, String low) {
+        mHighText = high;
+        mLowText = low;
+        measureTemperatures();
+        mLayerDirty = true;
+    }
+
+    /**
+     * Sets the days for the strip.  Only days after the one shown are drawn, so a forecast
+     * that starts today, or one that's a day or two old, is fine.
+     *
+     * @param forecast the days, or null for none; copied, so the caller may reuse it
+     * @param icons the icon for each day of the forecast, at {@link #STRIP_ICON_SIZE_PX}, or
+     * null for none
+     */
+    public void setForecast(WatchForecast forecast, Bitmap[] icons) {
+        if (forecast == null) {
+            mForecast.clear();
+        } else {
+            mForecast.copyFrom(forecast);
+        }
+        String format = mResources.getString(R.string.format_temperature);
+        Time day = new Time(Time.TIMEZONE_UTC);
+        for (int i = 0; i < WatchForecast.MAX_DAYS; i++) {
+            if (i < mForecast.getDayCount()) {
+                day.setJulianDay(mForecast.getFirstJulianDay() + i);
+                mStripLabels[i] = DateUtils.getDayOfWeekString(day.weekDay + 1,
+                        DateUtils.LENGTH_SHORT);
+                mStripTemperatures[i] = String.format(format, (double) mForecast.getHigh(i))
+                        + " " + String.format(format, (double) mForecast.getLow(i));
+                mStripIcons[i] = icons != null && i < icons.length ? icons[i] : null;
+            } else {
+                mStripLabels[i] = null;
+                mStripTemperatures[i] = null;
+                mStripIcons[i] = null;
+            }
+        }
+        mLayerDirty = true;
+    }
+
+    /**
+     * Turns the offscreen layer on or off.  Off, every frame draws everything; this is only
+     * useful for comparing the two.
+     */
+    public void setLayerEnabled(boolean enabled) {
+        mLayerEnabled = enabled;
+        if (!enabled) {
+            releaseLayer();
+        }
+    }
+
+    /**
+     * Frees the offscreen layer.  The next frame makes a new one.
+     */
+    public void releaseLayer() {
+        if (mLayer != null) {
+            mLayerCanvas.setBitmap(null);
+            mLayer.recycle();
+            mLayer = null;
+        }
+        mLayerDirty = true;
+    }
+
+    private void measureTemperatures() {
+        mHighPaint.getTextBounds(mHighText, 0, mHighText.length(), mHighBounds);
+    }
+
+    /**
+     * Draws a frame.  Allocates nothing, once the layer exists for this size of screen.
+     *
+     * @param time the time to show, already set
+     */
+    public void draw(Canvas canvas, Rect bounds, Time time) {
+        updateText(time);
+
+        if (mLayerEnabled) {
+            int width = bounds.width();
+            int height = bounds.height();
+            if (mLayer == null || mLayer.getWidth() != width || mLayer.getHeight() != height) {
+                releaseLayer();
+                mLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                mLayerCanvas.setBitmap(mLayer);
+            }
+            if (mLayerDirty) {
+                mLayerCanvas.save();
+                mLayerCanvas.translate(-bounds.left, -bounds.top);
+                drawStatic(mLayerCanvas, bounds);
+                mLayerCanvas.restore();
+                mLayerDirty = false;
+            }
+            canvas.drawBitmap(mLayer, bounds.left, bounds.top, null);
+        } else {
+            drawStatic(canvas, bounds);
+        }
+        drawTime(canvas, bounds);
+    }
+
+    // Everything but the time.
+    private void drawStatic(Canvas canvas, Rect bounds) {
+        canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+
+        int centerX = bounds.centerX();
+        int centerY = bounds.centerY();
+        int y = centerY;
+
+        if (mIcon != null) {
+            y -= mIcon.getHeight() / 2;
+            canvas.drawBitmap(mIcon, centerX - mIcon.getWidth() / 2, y, null);
+        }
+
+        y -= mDateBounds.height() + DATE_SPACING;
+        canvas.drawText(mDateChars, 0, mDateLength, centerX - mDateBounds.width() / 2, y,
+                mDatePaint);
+        mDateY = y;
+
+        y = centerY + (mIcon != null ? mIcon.getHeight() / 2 : 0) + TEMPERATURE_SPACING;
+        canvas.drawText(mHighText, centerX - mHighBounds.width(), y, mHighPaint);
+        canvas.drawText(mLowText, centerX, y, mLowPaint);
+
+        drawStrip(canvas, centerX, y + STRIP_SPACING);
+    }
+
+    // The days after today in columns: the day, its icon, and its high and low.
+    private void drawStrip(Canvas canvas, int centerX, int top) {
+        int first = mJulianDay + 1 - mForecast.getFirstJulianDay();
+        if (first < 0) {
+            first = 0;
+        }
+        int count = Math.min(STRIP_DAYS, mForecast.getDayCount() - first);
+        if (count <= 0) {
+            return;
+        }
+        float textSize = mStripPaint.getTextSize();
+        int labelY = top + (int) textSize;
+        int iconY = labelY + STRIP_SPACING / 2;
+        int temperatureY = iconY + STRIP_ICON_SIZE_PX + (int) textSize;
+        int x = centerX - (count - 1) * STRIP_COLUMN_WIDTH / 2;
+        for (int i = first; i < first + count; i++) {
+            canvas.drawText(mStripLabels[i], x, labelY, mStripPaint);
+            if (mStripIcons[i] != null) {
+                canvas.drawBitmap(mStripIcons[i], x - STRIP_ICON_SIZE_PX / 2, iconY, null);
+            }
+            canvas.drawText(mStripTemperatures[i], x, temperatureY, mStripPaint);
+            x += STRIP_COLUMN_WIDTH;
+        }
+    }
+
+    private void drawTime(Canvas canvas, Rect bounds) {
+        int centerX = bounds.centerX();
+        int y = mDateY - (mHourBounds.height() + TIME_SPACING);
+        canvas.drawText(mHourChars, 0, mHourLength, centerX - mHourBounds.width(), y,
+                mHourPaint);
+        canvas.drawText(mMinuteChars, 0, mMinuteChars.length, centerX, y, mMinutePaint);
+        if (mShowSeconds) {
+            canvas.drawText(mSecondChars, 0, mSecondChars.length, centerX + mMinuteWidth, y,
+                    mSecondsPaint);
+        }
+    }
+
+    private void updateText(Time time) {
+        int day = (time.year * 12 + time.month) * 31 + time.monthDay;
+        if (day != mFormattedDay) {
+            mFormattedDay = day;
+            int length = writeTwoDigits(mDateChars, 0, time.month + 1);
+            mDateChars[length++] = '.';
+            length += writeTwoDigits(mDateChars, length, time.monthDay);
+            mDateChars[length++] = '.';
+            length += writeNumber(mDateChars, length, time.year);
+            mDateLength = length;
+            mDatePaint.getTextBounds(mDateChars, 0, mDateLength, mDateBounds);
+            mJulianDay = julianDay(time.year, time.month + 1, time.monthDay);
+            mLayerDirty = true;
+        }
+
+        int minute = time.hour * 60 + time.minute;
+        if (minute != mFormattedMinute) {
+            boolean hourChanged = mFormattedMinute < 0 || time.hour != mFormattedMinute / 60;
+            mFormattedMinute = minute;
+            writeTwoDigits(mMinuteChars, 0, time.minute);
+            mMinuteWidth = mMinutePaint.measureText(mMinuteChars, 0, mMinuteChars.length);
+            if (hourChanged) {
+                mHourLength = writeNumber(mHourChars, 0, time.hour);
+                mHourChars[mHourLength++] = ':';
+                mHourPaint.getTextBounds(mHourChars, 0, mHourLength, mHourBounds);
+            }
+        }
+        if (mShowSeconds) {
+            writeTwoDigits(mSecondChars, 0, time.second);
+        }
+    }
+
+    // The Julian day number of a Gregorian date, as Time.getJulianDay gives, without needing
+    // the time in milliseconds.
+    private static int julianDay(int year, int month, int day) {
+        int a = (14 - month) / 12;
+        int y = year + 4800 - a;
+        int m = month + 12 * a - 3;
+        return day + (153 * m + 2) / 5 + 365 * y + y / 4 - y / 100 + y / 400 - 32045;
+    }
+
+    private static int writeTwoDigits(char[] buffer, int offset, int value) {
+        buffer[offset] = (char) ('0' + value / 10 % 10);
+        buffer[offset + 1] = (char) ('0' + value % 10);
+        return 2;
+    }
+
+    // Writes a non-negative number of up to four digits without leading zeros.
+    private static int writeNumber(char[] buffer, int offset, int value) {
+        int digits = value >= 1000 ? 4 : value >= 100 ? 3 : value >= 10 ? 2 : 1;
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer[offset + i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return digits;
+    }
+}
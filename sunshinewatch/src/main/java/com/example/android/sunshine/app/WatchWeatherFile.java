@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.android.gms.wearable.DataMap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The last weather data map the watch received, kept in a small file so the face can show it
+ * in its first frame after a reboot or being picked again, before the phone is reachable.
+ *
+ * The file is the data map's own serialized form behind a short header.
+ */
+public class WatchWeatherFile {
+
+    private static final String LOG_TAG = WatchWeatherFile.class.getSimpleName();
+
+    private static final String FILE_NAME = "last_weather";
+    private static final int MAGIC = 0x53554e57; // "SUNW"
+    private static final int VERSION = 1;
+    // A weather data map is well under a kilobyte; anything much bigger is corrupt.
+    private static final int MAX_LENGTH = 64 * 1024;
+
+    private final File mFile;
+    // What the file holds, so the same weather isn't written again.
+    private byte[] mWritten;
+
+    public WatchWeatherFile(Context context) {
+        mFile = new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * @return the saved data map, or null if there's none or it can't be read
+     */
+    public synchronized DataMap read() {
+        if (!mFile.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(mFile));
+            try {
+                if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                    return null;
+                }
+                int length = in.readInt();
+                if (length < 0 || length > MAX_LENGTH) {
+                    return null;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                DataMap dataMap = DataMap.fromByteArray(bytes);
+                mWritten = bytes;
+                return dataMap;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't read the saved weather", e);
+            return null;
+        } catch (RuntimeException e) {
+            Log.w(LOG_TAG, "Ignoring corrupt saved weather", e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves the data map, unless it's what the file already holds.  Does file I/O; call it off
+     * the main thread.
+     */
+    public synchronized void write(DataMap dataMap) {
+        byte[] bytes = dataMap.toByteArray();
+        if (Arrays.equals(bytes, mWritten)) {
+            return;
+        }
+        File temp = new File(mFile.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(temp));
+            try {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+            if (temp.renameTo(mFile)) {
+                mWritten = bytes;
+            } else {
+                Log.w(LOG_TAG, "Couldn't replace the saved weather");
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't save the weather", e);
+            temp.delete();
+        }
+    }
+}
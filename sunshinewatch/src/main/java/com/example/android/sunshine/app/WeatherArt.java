@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.example.android.sunshine.app.shared.WeatherConditions;
+
+/**
+ * The weather art bundled with the watch face, looked up by OpenWeatherMap condition code the
+ * same way the phone does it.
+ */
+public final class WeatherArt {
+
+    private static final int[] ART_RESOURCES = new int[WeatherConditions.COUNT];
+
+    static {
+        ART_RESOURCES[WeatherConditions.STORM] = R.drawable.art_storm;
+        ART_RESOURCES[WeatherConditions.LIGHT_RAIN] = R.drawable.art_light_rain;
+        ART_RESOURCES[WeatherConditions.RAIN] = R.drawable.art_rain;
+        ART_RESOURCES[WeatherConditions.SNOW] = R.drawable.art_snow;
+        ART_RESOURCES[WeatherConditions.FOG] = R.drawable.art_fog;
+        ART_RESOURCES[WeatherConditions.CLEAR] = R.drawable.art_clear;
+        ART_RESOURCES[WeatherConditions.LIGHT_CLOUDS] = R.drawable.art_light_clouds;
+        ART_RESOURCES[WeatherConditions.CLOUDS] = R.drawable.art_clouds;
+    }
+
+    private WeatherArt() {
+    }
+
+    /**
+     * @return the art's resource id, or -1 if the code isn't one we have art for
+     */
+    public static int getResource(int weatherId) {
+        return WeatherConditions.getResource(weatherId, ART_RESOURCES);
+    }
+
+    /**
+     * Decodes the art with the largest power of two subsampling that keeps it at least
+     * sizePx square, so only a little scaling is left to do.
+     *
+     * @return the art, or null if the code isn't one we have art for
+     */
+    public static Bitmap decode(Resources resources, int weatherId, int sizePx) {
+        int resourceId = getResource(weatherId);
+        if (resourceId == -1) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resourceId, options);
+        int sourceSize = Math.max(options.outWidth, options.outHeight);
+
+        int sampleSize = 1;
+        while (sourceSize / (sampleSize * 2) >= sizePx) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeResource(resources, resourceId, options);
+    }
+}
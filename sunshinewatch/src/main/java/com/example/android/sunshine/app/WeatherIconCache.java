@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.LruCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A few weather icons, decoded and scaled to the size the face draws them at.
+ *
+ * Conditions change slowly and there are only eight of them, so a handful of entries covers a
+ * day's worth of changes without decoding anything twice.  Icons are keyed by bundled
+ * resource or by the digest of the asset they came from.  Decoding is slow; call the getters
+ * off the main thread.
+ */
+public class WeatherIconCache {
+
+    private static final int MAX_ICONS = 6;
+
+    private final Resources mResources;
+    private final int mSizePx;
+    private final LruCache<String, Bitmap> mIcons = new LruCache<String, Bitmap>(MAX_ICONS);
+
+    public WeatherIconCache(Resources resources, int sizePx) {
+        mResources = resources;
+        mSizePx = sizePx;
+    }
+
+    /**
+     * @return the bundled art for the condition, or null if there's none for the code
+     */
+    public Bitmap getArt(int weatherId) {
+        int resourceId = WeatherArt.getResource(weatherId);
+        if (resourceId == -1) {
+            return null;
+        }
+        String key = "res:" + resourceId;
+        Bitmap icon = mIcons.get(key);
+        if (icon == null) {
+            icon = scale(WeatherArt.decode(mResources, weatherId, mSizePx));
+            if (icon != null) {
+                mIcons.put(key, icon);
+            }
+        }
+        return icon;
+    }
+
+    /**
+     * @param digest identifies the asset's contents
+     * @param in the asset's contents; read and closed only if the icon isn't cached
+     * @return the decoded icon, or null if the stream doesn't hold an image
+     */
+    public Bitmap getAsset(String digest, InputStream in) throws IOException {
+        String key = "asset:" + digest;
+        Bitmap icon = mIcons.get(key);
+        if (icon != null) {
+            in.close();
+            return icon;
+        }
+
+        byte[] bytes = readFully(in);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        int sourceSize = Math.max(options.outWidth, options.outHeight);
+        int sampleSize = 1;
+        while (sourceSize / (sampleSize * 2) >= mSizePx) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        icon = scale(BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options));
+        if (icon != null) {
+            mIcons.put(key, icon);
+        }
+        return icon;
+    }
+
+    private Bitmap scale(Bitmap bitmap) {
+        if (bitmap == null || (bitmap.getWidth() == mSizePx && bitmap.getHeight() == mSizePx)) {
+            return bitmap;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, mSizePx, mSizePx, true);
+        bitmap.recycle();
+        return scaled;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    public void clear() {
+        mIcons.evictAll();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.util.Log;
+
+import com.example.android.sunshine.app.shared.WatchForecast;
+import com.example.android.sunshine.app.shared.WatchWeatherContract;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns weather data items from the phone into what the face draws, on a background thread.
+ *
+ * The icon is decoded at the size it's drawn at, through a {@link WeatherIconCache}, the
+ * temperatures are formatted, and the coming days are decoded with small icons of their own,
+ * and only then is the result posted to the main thread, where
+ * the engine draws.  A newer item cancels an older one still in progress: it's dropped from
+ * the queue if it hasn't started, and its result is discarded if it has.
+ *
+ * Nothing here waits for the connection.  If the client isn't connected when an asset is
+ * needed, the item is shown without that asset.
+ *
+ * Every item that makes it through is saved to a {@link WatchWeatherFile}, which the engine
+ * reads back through {@link #applyNow} when it starts.
+ */
+public class WeatherIngest {
+
+    private static final String LOG_TAG = WeatherIngest.class.getSimpleName();
+
+    private static final int MSG_INGEST = 0;
+    private static final long ASSET_TIMEOUT_SECONDS = 10;
+
+    /**
+     * Gets the results, on the main thread.
+     */
+    public interface Callback {
+        /**
+         * @param icon the icon at the face's size, or null for none
+         * @param high today's high, formatted, or null if the item had none
+         * @param low today's low, formatted, or null if the item had none
+         * @param forecast the coming days, or null if the item had none
+         * @param forecastIcons an icon for each day of the forecast, or null for none, at
+         * {@link WatchFaceRenderer#STRIP_ICON_SIZE_PX}
+         */
+        void onWeather(Bitmap icon, String high, String low, WatchForecast forecast,
+                       Bitmap[] forecastIcons);
+    }
+
+    private final Resources mResources;
+    private final GoogleApiClient mClient;
+    private final Callback mCallback;
+    private final WeatherIconCache mIconCache;
+    private final WeatherIconCache mStripIconCache;
+    private final WatchWeatherFile mWeatherFile;
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Bumped for every submitted item; a result is delivered only if nothing came after it.
+    private volatile int mGeneration;
+
+    public WeatherIngest(Resources resources, GoogleApiClient client, WatchWeatherFile weatherFile,
+                         Callback callback) {
+        mResources = resources;
+        mClient = client;
+        mWeatherFile = weatherFile;
+        mCallback = callback;
+        mIconCache = new WeatherIconCache(resources, WatchFaceRenderer.ICON_SIZE_PX);
+        mStripIconCache = new WeatherIconCache(resources, WatchFaceRenderer.STRIP_ICON_SIZE_PX);
+
+        mThread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                if (msg.what == MSG_INGEST) {
+                    ingest((DataMap) msg.obj, msg.arg1);
+                }
+            }
+        };
+    }
+
+    /**
+     * Queues a weather data map, replacing any still waiting.  Returns straight away.
+     */
+    public void submit(DataMap dataMap) {
+        int generation = ++mGeneration;
+        mHandler.removeMessages(MSG_INGEST);
+        mHandler.obtainMessage(MSG_INGEST, generation, 0, dataMap).sendToTarget();
+    }
+
+    /**
+     * Processes a data map on the calling thread and delivers it to the callback before
+     * returning, for the saved weather at startup.  Only the bundled art is used; assets
+     * aren't fetched.
+     */
+    public void applyNow(DataMap dataMap) {
+        WatchForecast forecast = readForecast(dataMap);
+        mCallback.onWeather(mIconCache.getArt(getWeatherId(dataMap)), formatHigh(dataMap),
+                formatLow(dataMap), forecast, loadForecastIcons(forecast));
+    }
+
+    /**
+     * Stops the thread.  Anything in progress is dropped.
+     */
+    public void quit() {
+        ++mGeneration;
+        mHandler.removeMessages(MSG_INGEST);
+        mThread.quit();
+        mIconCache.clear();
+        mStripIconCache.clear();
+    }
+
+    private void ingest(DataMap dataMap, final int generation) {
+        final Bitmap icon = loadIcon(dataMap, generation);
+        if (generation != mGeneration) {
+            return;
+        }
+        final String high = formatHigh(dataMap);
+        final String low = formatLow(dataMap);
+        final WatchForecast forecast = readForecast(dataMap);
+        final Bitmap[] forecastIcons = loadForecastIcons(forecast);
+        mWeatherFile.write(dataMap);
+
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // Checked again here: a newer item may have arrived while this was queued.
+                if (generation == mGeneration) {
+                    mCallback.onWeather(icon, high, low, forecast, forecastIcons);
+                }
+            }
+        });
+    }
+
+    private static int getWeatherId(DataMap dataMap) {
+        return dataMap.getInt(WatchWeatherContract.KEY_WEATHER_ID, -1);
+    }
+
+    private String formatHigh(DataMap dataMap) {
+        return formatTemperature(dataMap, WatchWeatherContract.KEY_HIGH);
+    }
+
+    private String formatLow(DataMap dataMap) {
+        return formatTemperature(dataMap, WatchWeatherContract.KEY_LOW);
+    }
+
+    private String formatTemperature(DataMap dataMap, String key) {
+        if (!dataMap.containsKey(key)) {
+            return null;
+        }
+        return String.format(mResources.getString(R.string.format_temperature),
+                dataMap.getDouble(key));
+    }
+
+    private static WatchForecast readForecast(DataMap dataMap) {
+        byte[] bytes = dataMap.getByteArray(WatchWeatherContract.KEY_FORECAST);
+        if (bytes == null) {
+            return null;
+        }
+        WatchForecast forecast = new WatchForecast();
+        if (!forecast.readFrom(bytes)) {
+            Log.w(LOG_TAG, "Ignoring a forecast in a format we don't know");
+            return null;
+        }
+        return forecast;
+    }
+
+    // Only the bundled art; a code without any is drawn without an icon.
+    private Bitmap[] loadForecastIcons(WatchForecast forecast) {
+        if (forecast == null) {
+            return null;
+        }
+        Bitmap[] icons = new Bitmap[forecast.getDayCount()];
+        for (int i = 0; i < icons.length; i++) {
+            icons[i] = mStripIconCache.getArt(forecast.getWeatherId(i));
+        }
+        return icons;
+    }
+
+    private Bitmap loadIcon(DataMap dataMap, int generation) {
+        Bitmap icon = mIconCache.getArt(getWeatherId(dataMap));
+        if (icon != null) {
+            return icon;
+        }
+        // A code we have no art for; the phone may have sent some.
+        Asset asset = dataMap.getAsset(WatchWeatherContract.KEY_ICON_ASSET);
+        if (asset == null || generation != mGeneration) {
+            return null;
+        }
+        if (!mClient.isConnected()) {
+            Log.d(LOG_TAG, "Not connected; showing the weather without its icon");
+            return null;
+        }
+        DataApi.GetFdForAssetResult result = Wearable.DataApi.getFdForAsset(mClient, asset)
+                .await(ASSET_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        // Released on every path, or its descriptor leaks.
+        try {
+            InputStream in = result.getInputStream();
+            if (!result.getStatus().isSuccess() || in == null) {
+                Log.w(LOG_TAG, "Couldn't open the icon asset: " + result.getStatus());
+                return null;
+            }
+            return mIconCache.getAsset(asset.getDigest(), in);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't read the icon asset", e);
+            return null;
+        } finally {
+            result.release();
+        }
+    }
+}